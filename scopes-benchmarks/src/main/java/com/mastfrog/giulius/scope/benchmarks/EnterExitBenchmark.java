@@ -0,0 +1,142 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope.benchmarks;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+/**
+ * Cost of one enter / exit pair when the scope has already been entered
+ * <code>depth - 1</code> times on the calling thread. The steady state should
+ * allocate nothing, so a measurement iteration in which the benchmark thread
+ * allocates more than JMH's own bookkeeping accounts for fails the run, where
+ * the JVM can report per-thread allocation; <code>-prof gc</code> gives the
+ * exact rate.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnterExitBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int depth;
+
+    // What the benchmark thread may allocate in one iteration outside the
+    // code being measured
+    private static final long ALLOCATION_SLACK = 1024 * 1024;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private Fixtures fixtures;
+    private final Object[] contents = {Fixtures.REQUEST, Fixtures.RESPONSE, 23};
+    private long allocatedAtStart;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixtures = new Fixtures();
+        if (depth > 1) {
+            fixtures.enterNested(depth - 1, depth - 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (depth > 1) {
+            fixtures.exitNested(depth - 1);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        allocatedAtStart = allocatedBytes();
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkAllocation(IterationParams params) {
+        if (params.getType() != IterationType.MEASUREMENT || allocatedAtStart < 0) {
+            return;
+        }
+        long allocated = allocatedBytes() - allocatedAtStart;
+        if (allocated > ALLOCATION_SLACK) {
+            throw new IllegalStateException("Enter / exit at depth " + depth
+                    + " allocated " + allocated + " bytes in one iteration");
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) THREADS;
+            if (mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled()) {
+                return mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public void enterExit() {
+        fixtures.scope.enter(contents);
+        fixtures.scope.exit();
+    }
+
+    @Benchmark
+    public void enterExitSingleObject() {
+        fixtures.scope.enter(Fixtures.REQUEST);
+        fixtures.scope.exit();
+    }
+
+    @Benchmark
+    public void enterExitThreeObjects() {
+        fixtures.scope.enter(Fixtures.REQUEST, Fixtures.RESPONSE, 23);
+        fixtures.scope.exit();
+    }
+
+    @Benchmark
+    public void enterGetExit(Blackhole bh) {
+        try ( QuietAutoClosable qac = fixtures.scope.enter(contents)) {
+            bh.consume(fixtures.strings.get());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope.benchmarks;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end latency of submitting a task that reads something from the scope
+ * to a wrapped thread pool and waiting for its result, compared with the same
+ * pool unwrapped; and of fanning a batch of tasks out from one request, where
+ * the scope's own pool can keep the request's snapshot entered across tasks.
+ *
+ * @author Tim Boudreau
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pools {
+
+        final Fixtures fixtures = new Fixtures();
+        ExecutorService raw;
+        ExecutorService scoped;
+        ExecutorService virtual;
+        ExecutorService workers;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            raw = Executors.newFixedThreadPool(4);
+            scoped = fixtures.scope.wrapThreadPool(raw);
+            virtual = fixtures.scope.newVirtualThreadExecutor();
+            workers = fixtures.scope.newThreadPool(4);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            virtual.shutdown();
+            workers.shutdown();
+            raw.shutdown();
+            raw.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class InScope {
+
+        private Pools pools;
+
+        @Setup(Level.Trial)
+        public void setup(Pools pools) {
+            this.pools = pools;
+            pools.fixtures.enterNested(2, 8);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pools.fixtures.exitNested(2);
+        }
+    }
+
+    @Benchmark
+    public Object unscopedSubmit(Pools pools) throws InterruptedException, ExecutionException {
+        return pools.raw.submit(() -> Fixtures.REQUEST).get();
+    }
+
+    @Benchmark
+    public Object scopedSubmit(Pools pools, InScope in) throws InterruptedException, ExecutionException {
+        return pools.scoped.submit(pools.fixtures.strings::get).get();
+    }
+
+    @Benchmark
+    public Object virtualThreadSubmit(Pools pools, InScope in) throws InterruptedException, ExecutionException {
+        return pools.virtual.submit(pools.fixtures.strings::get).get();
+    }
+
+    @Benchmark
+    public Object scopedFanOut(Pools pools, InScope in) throws InterruptedException, ExecutionException {
+        return fanOut(pools.scoped, pools);
+    }
+
+    @Benchmark
+    public Object workerPoolFanOut(Pools pools, InScope in) throws InterruptedException, ExecutionException {
+        return fanOut(pools.workers, pools);
+    }
+
+    private static Object fanOut(ExecutorService exe, Pools pools) throws InterruptedException, ExecutionException {
+        Future<?>[] futures = new Future<?>[64];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = exe.submit(pools.fixtures.strings::get);
+        }
+        Object last = null;
+        for (Future<?> f : futures) {
+            last = f.get();
+        }
+        return last;
+    }
+}
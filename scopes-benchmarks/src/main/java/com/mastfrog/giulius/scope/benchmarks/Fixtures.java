@@ -0,0 +1,80 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope.benchmarks;
+
+import com.google.inject.Provider;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import java.util.UUID;
+
+/**
+ * Shared setup for benchmarks - a scope with a handful of bound types, some of
+ * which will be present in the scope and some of which will not.
+ *
+ * @author Tim Boudreau
+ */
+final class Fixtures {
+
+    static final String REQUEST = "request";
+    static final StringBuilder RESPONSE = new StringBuilder("response");
+
+    final ReentrantScope scope = new ReentrantScope();
+    // Concrete and interface types which benchmarks will put in scope
+    final Provider<String> strings = scope.provider(String.class, () -> null);
+    final Provider<CharSequence> charSequences = scope.provider(CharSequence.class, () -> null);
+    final Provider<Integer> integers = scope.provider(Integer.class, () -> null);
+    // Concrete and interface types which will never be there
+    final Provider<UUID> uuids = scope.provider(UUID.class, () -> null);
+    final Provider<Runnable> runnables = scope.provider(Runnable.class, () -> null);
+
+    /**
+     * Enter the scope <code>frames</code> times, with the request and response
+     * in the outermost frame and <code>count</code> objects spread across all
+     * of them.
+     *
+     * @param frames The number of frames
+     * @param count The total number of objects
+     */
+    void enterNested(int frames, int count) {
+        int perFrame = Math.max(1, count / frames);
+        for (int i = 0; i < frames; i++) {
+            Object[] contents = new Object[i == 0 ? perFrame + 2 : perFrame];
+            int start = 0;
+            if (i == 0) {
+                contents[0] = REQUEST;
+                contents[1] = RESPONSE;
+                start = 2;
+            }
+            for (int j = start; j < contents.length; j++) {
+                contents[j] = Integer.valueOf(i * perFrame + j);
+            }
+            scope.enter(contents);
+        }
+    }
+
+    void exitNested(int frames) {
+        for (int i = 0; i < frames; i++) {
+            scope.exit();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope.benchmarks;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolving scoped objects the way applications do - through Guice, via a
+ * Provider obtained from the injector, and by constructing an object which has
+ * scoped objects injected into it.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuiceProviderBenchmark {
+
+    @Param({"1", "8"})
+    public int depth;
+
+    private ReentrantScope scope;
+    private Injector injector;
+    private Provider<String> strings;
+    private Provider<CharSequence> charSequences;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        scope = new ReentrantScope();
+        injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                scope.bindTypes(binder(), String.class, CharSequence.class, Integer.class);
+                scope.bindTypesAllowingNulls(binder(), StringBuilder.class);
+            }
+        });
+        strings = injector.getProvider(String.class);
+        charSequences = injector.getProvider(CharSequence.class);
+        scope.enter(Fixtures.REQUEST, Fixtures.RESPONSE);
+        for (int i = 1; i < depth; i++) {
+            scope.enter(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int i = 0; i < depth; i++) {
+            scope.exit();
+        }
+    }
+
+    @Benchmark
+    public String providerGet() {
+        return strings.get();
+    }
+
+    @Benchmark
+    public CharSequence providerGetInterface() {
+        return charSequences.get();
+    }
+
+    @Benchmark
+    public Handler injectHandler() {
+        return injector.getInstance(Handler.class);
+    }
+
+    public static final class Handler {
+
+        final String request;
+        final Integer number;
+        final StringBuilder response;
+
+        @Inject
+        Handler(String request, CharSequence chars, Integer number, StringBuilder response) {
+            this.request = request;
+            this.number = number;
+            this.response = response;
+        }
+    }
+}
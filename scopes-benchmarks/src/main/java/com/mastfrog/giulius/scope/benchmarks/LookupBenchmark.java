@@ -0,0 +1,109 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looking up objects in scope through providers for bound types, both present
+ * and absent, concrete and interface, and through <code>contains()</code> for
+ * types which were never bound. The objects looked up are in the outermost
+ * frame, so every search has to go all the way down.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"1", "8", "32"})
+    public int depth;
+
+    @Param({"4", "32"})
+    public int contents;
+
+    @Param({"false", "true"})
+    public boolean resolutionCache;
+
+    private Fixtures fixtures;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixtures = new Fixtures();
+        fixtures.scope.setResolutionCacheEnabled(resolutionCache);
+        fixtures.enterNested(depth, contents);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixtures.exitNested(depth);
+    }
+
+    @Benchmark
+    public String hitConcrete() {
+        return fixtures.strings.get();
+    }
+
+    @Benchmark
+    public CharSequence hitInterface() {
+        return fixtures.charSequences.get();
+    }
+
+    @Benchmark
+    public Object missConcrete() {
+        return fixtures.uuids.get();
+    }
+
+    @Benchmark
+    public Runnable missInterface() {
+        return fixtures.runnables.get();
+    }
+
+    @Benchmark
+    public boolean unboundHit() {
+        return fixtures.scope.contains(Appendable.class);
+    }
+
+    @Benchmark
+    public boolean unboundMiss() {
+        return fixtures.scope.contains(Thread.class);
+    }
+}
@@ -0,0 +1,80 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all of the benchmarks (or those matching a regular expression passed
+ * with <code>--include</code>) once per thread count, with the GC profiler
+ * enabled so allocation rates are reported. Thread counts default to 1, 2, 4
+ * and 8 and may be passed as arguments. Results for each thread count are
+ * written to <code>scopes-benchmarks-$THREADS.json</code>.
+ * <p/>
+ * To run a single benchmark with JMH's own options instead, use
+ * <code>java -cp target/benchmarks.jar org.openjdk.jmh.Main</code>.
+ *
+ * @author Tim Boudreau
+ */
+public final class RunBenchmarks {
+
+    private RunBenchmarks() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = RunBenchmarks.class.getPackage().getName() + ".*";
+        int[] threads = {1, 2, 4, 8};
+        int threadCount = 0;
+        for (int i = 0; i < args.length; i++) {
+            if ("--include".equals(args[i]) && i < args.length - 1) {
+                include = args[++i];
+            } else {
+                if (threadCount == 0) {
+                    threads = new int[args.length];
+                }
+                threads[threadCount++] = Integer.parseInt(args[i]);
+            }
+        }
+        if (threadCount > 0 && threadCount < threads.length) {
+            int[] nue = new int[threadCount];
+            System.arraycopy(threads, 0, nue, 0, threadCount);
+            threads = nue;
+        }
+        for (int t : threads) {
+            ChainedOptionsBuilder opts = new OptionsBuilder()
+                    .include(include)
+                    .threads(t)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("scopes-benchmarks-" + t + ".json");
+            new Runner(opts.build()).run();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope.benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of capturing the scope contents by wrapping a Runnable or Callable, as
+ * the number of objects in scope grows, and of replaying a captured snapshot
+ * on a thread which is not in scope.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapBenchmark {
+
+    @Param({"1", "8", "32", "128"})
+    public int contents;
+
+    @Param({"1", "4"})
+    public int frames;
+
+    private Fixtures fixtures;
+    private Runnable runnable;
+    private Callable<String> callable;
+    private Runnable replay;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixtures = new Fixtures();
+        runnable = () -> fixtures.strings.get();
+        callable = fixtures.strings::get;
+        fixtures.enterNested(frames, contents);
+        replay = fixtures.scope.wrap(runnable);
+        // Leave the scope entered on this thread, so the wrap benchmarks
+        // capture it; the replay benchmark exits around its measurement
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixtures.exitNested(frames);
+    }
+
+    @Benchmark
+    public Runnable wrapRunnable() {
+        return fixtures.scope.wrap(runnable);
+    }
+
+    @Benchmark
+    public Callable<String> wrapCallable() {
+        return fixtures.scope.wrap(callable);
+    }
+
+    @Benchmark
+    public void replayOnTopOfExisting() {
+        // The calling thread is in scope, so the snapshot goes on top of it
+        replay.run();
+    }
+}
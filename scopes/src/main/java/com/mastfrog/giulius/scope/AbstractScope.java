@@ -34,6 +34,7 @@ import com.mastfrog.function.throwing.ThrowingFunction;
 import com.mastfrog.util.strings.AlignedText;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.TypeVariable;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -41,14 +42,27 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Base class for custom scope implementations. The basic model here is that you
@@ -65,6 +79,16 @@ public abstract class AbstractScope implements Scope {
 
     private final Set<Class<?>> types = new HashSet<>();
     private final Set<Class<?>> nullableTypes = new HashSet<>();
+    // Each bound type gets an index into the slots array of every Frame,
+    // assigned when it is bound, so lookups do not have to search
+    private final Map<Class<?>, Integer> slotIndices = new ConcurrentHashMap<>();
+    private volatile Class<?>[] slotTypes = new Class<?>[0];
+    private final ClassValue<SlotFiling> filings = new ClassValue<SlotFiling>() {
+        @Override
+        protected SlotFiling computeValue(Class<?> type) {
+            return new SlotFiling(type, slotTypes);
+        }
+    };
     @SuppressWarnings("NonConstantLogger")
     protected final Logger logger = Logger.getLogger(getClass().getName());
 
@@ -133,6 +157,191 @@ public abstract class AbstractScope implements Scope {
         }
     }
 
+    /**
+     * Get the slot index for a type, assigning one if it does not already have
+     * one. Called when a type is bound in this scope.
+     *
+     * @param type A type
+     * @return The slot index
+     */
+    final int slot(Class<?> type) {
+        Integer result = slotIndices.get(type);
+        if (result != null) {
+            return result;
+        }
+        synchronized (slotIndices) {
+            result = slotIndices.get(type);
+            if (result == null) {
+                Class<?>[] old = slotTypes;
+                Class<?>[] nue = Arrays.copyOf(old, old.length + 1);
+                nue[old.length] = type;
+                result = old.length;
+                slotIndices.put(type, result);
+                slotTypes = nue;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Get the slot index for a type, or -1 if it has not been bound in this
+     * scope.
+     *
+     * @param type A type
+     * @return The slot index or -1
+     */
+    final int slotIfBound(Class<?> type) {
+        Integer result = slotIndices.get(type);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * Create a new frame whose slots are filled in from the passed contents,
+     * falling back to those of the parent frame.
+     *
+     * @param contents The objects being entered
+     * @param parent The frame current on the calling thread, if any
+     * @return A frame
+     */
+    final Frame newFrame(Object[] contents, Frame parent) {
+        return newFrame(contents, parent, parent);
+    }
+
+    /**
+     * Create a new frame whose slots are filled in from the passed contents,
+     * falling back to those of the parent frame, which will make
+     * <code>restore</code> current again when exited.
+     *
+     * @param contents The objects being entered
+     * @param parent The frame to search after this one
+     * @param restore The frame to return to on exit
+     * @return A frame
+     */
+    final Frame newFrame(Object[] contents, Frame parent, Frame restore) {
+        Class<?>[] types = slotTypes;
+        Object[] slots = types.length == 0 ? Frame.EMPTY : new Object[types.length];
+        return fileSlots(new Frame(contents, parent, restore, slots), types);
+    }
+
+    /**
+     * Create a recyclable frame for a single object, reusing the passed spare
+     * frame if it is suitable.
+     *
+     * @param spare A spare frame parked on the parent, or null
+     * @param parent The frame current on the calling thread, if any
+     * @param a The object being entered
+     * @return A frame
+     */
+    final Frame recycledFrame(Frame spare, Frame parent, Object a) {
+        Class<?>[] types = slotTypes;
+        Frame frame = Frame.recycled(spare, 1, parent, types.length);
+        frame.contents[0] = a;
+        return fileSlots(frame, types);
+    }
+
+    final Frame recycledFrame(Frame spare, Frame parent, Object a, Object b) {
+        Class<?>[] types = slotTypes;
+        Frame frame = Frame.recycled(spare, 2, parent, types.length);
+        frame.contents[0] = a;
+        frame.contents[1] = b;
+        return fileSlots(frame, types);
+    }
+
+    final Frame recycledFrame(Frame spare, Frame parent, Object a, Object b, Object c) {
+        Class<?>[] types = slotTypes;
+        Frame frame = Frame.recycled(spare, 3, parent, types.length);
+        frame.contents[0] = a;
+        frame.contents[1] = b;
+        frame.contents[2] = c;
+        return fileSlots(frame, types);
+    }
+
+    /**
+     * Create a recyclable frame holding a copy of the passed contents - since
+     * the array does not escape, the JIT can often avoid allocating it when
+     * it is a varargs array.
+     *
+     * @param spare A spare frame parked on the parent, or null
+     * @param parent The frame current on the calling thread, if any
+     * @param contents The objects being entered
+     * @return A frame
+     */
+    final Frame recycledFrame(Frame spare, Frame parent, Object[] contents) {
+        Class<?>[] types = slotTypes;
+        int arity = contents == null ? 0 : contents.length;
+        Frame frame = Frame.recycled(spare, arity, parent, types.length);
+        if (arity > 0) {
+            System.arraycopy(contents, 0, frame.contents, 0, arity);
+        }
+        return fileSlots(frame, types);
+    }
+
+    private Frame fileSlots(Frame frame, Class<?>[] types) {
+        Object[] slots = frame.slots;
+        Frame parent = frame.parent;
+        Deadline deadline = null;
+        CancellationToken token = null;
+        if (parent != null) {
+            deadline = parent.deadline;
+            token = parent.token;
+            int inherited = Math.min(parent.slots.length, slots.length);
+            System.arraycopy(parent.slots, 0, slots, 0, inherited);
+            // Types bound after the parent was created were never filed
+            for (int i = inherited; i < slots.length; i++) {
+                slots[i] = parent.findEntry(types[i]);
+            }
+        }
+        for (Object o : frame.contents) {
+            if (o instanceof Deadline) {
+                deadline = Deadline.earliest(deadline, (Deadline) o);
+            } else if (o instanceof CancellationToken) {
+                token = (CancellationToken) o;
+            }
+            if (o != null) {
+                for (int slot : filing(LazyContent.typeOf(o), types.length)) {
+                    if (slot < slots.length) {
+                        slots[slot] = o;
+                    }
+                }
+            }
+        }
+        frame.deadline = deadline;
+        frame.token = token;
+        return frame;
+    }
+
+    private int[] filing(Class<?> type, int slotCount) {
+        SlotFiling result = filings.get(type);
+        if (result.slotCount < slotCount) {
+            // More types were bound since this was computed
+            filings.remove(type);
+            result = filings.get(type);
+        }
+        return result.slots;
+    }
+
+    /**
+     * The set of slots an instance of some class should be filed into.
+     */
+    private static final class SlotFiling {
+
+        private static final int[] NONE = new int[0];
+        final int slotCount;
+        final int[] slots;
+
+        SlotFiling(Class<?> type, Class<?>[] slotTypes) {
+            slotCount = slotTypes.length;
+            int[] result = NONE;
+            for (int i = 0; i < slotTypes.length; i++) {
+                if (slotTypes[i].isAssignableFrom(type)) {
+                    result = Arrays.copyOf(result, result.length + 1);
+                    result[result.length - 1] = i;
+                }
+            }
+            slots = result;
+        }
+    }
+
     public ScopeRunner runner(Injector inj) {
         return new ScopeRunner(inj, this);
     }
@@ -203,11 +412,268 @@ public abstract class AbstractScope implements Scope {
      */
     protected abstract QuietAutoClosable enter(Object... scopeContents);
 
+    /**
+     * Enter this scope with a single object. Scopes which can avoid
+     * allocating an array for the common case of entering with one, two or
+     * three objects override this and its siblings; the default
+     * implementation delegates to <code>enter(Object...)</code>.
+     *
+     * @param a An object which should be available for injection
+     * @return An AutoClosable which exits the scope
+     */
+    protected QuietAutoClosable enter(Object a) {
+        return enter(new Object[]{a});
+    }
+
+    protected QuietAutoClosable enter(Object a, Object b) {
+        return enter(new Object[]{a, b});
+    }
+
+    protected QuietAutoClosable enter(Object a, Object b, Object c) {
+        return enter(new Object[]{a, b, c});
+    }
+
+    /**
+     * Enter this scope with a deadline, which travels with every snapshot of
+     * this entry - so tasks wrapped or submitted to a scoped executor from it
+     * carry it - and causes scoped executors to shed any such task which has
+     * not started by the time it passes. A deadline entered while an earlier
+     * one is in scope does not extend it.
+     *
+     * @param deadline When work done in this entry should be finished
+     * @param scopeContents Other objects to enter the scope with
+     * @return An AutoClosable which exits the scope
+     */
+    public QuietAutoClosable enterWithDeadline(Instant deadline, Object... scopeContents) {
+        Object[] contents = new Object[scopeContents.length + 1];
+        contents[0] = Deadline.at(deadline);
+        System.arraycopy(scopeContents, 0, contents, 1, scopeContents.length);
+        return enter(contents);
+    }
+
+    /**
+     * Get the deadline currently in effect in this scope on the calling
+     * thread, if any.
+     *
+     * @return A deadline or null
+     */
+    public Deadline deadline() {
+        Frame frame = currentFrame();
+        if (frame == null) {
+            if (!inScope()) {
+                return null;
+            }
+            frame = snapshot();
+        }
+        return frame.deadline;
+    }
+
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * Get the number of tasks submitted to this scope's executors which were
+     * not run because their deadline had passed before they started.
+     *
+     * @return A count
+     */
+    public long shedCount() {
+        return shed.sum();
+    }
+
+    /**
+     * Determine if a task run by a scoped executor should be skipped because
+     * the deadline in its snapshot has passed, counting it if so, or its
+     * cancellation token has been cancelled. A task which is a Future - as
+     * anything passed to <code>submit()</code> is by the time an executor
+     * sees it - is cancelled, so anything waiting on it finds out
+     * immediately.
+     *
+     * @param snapshot The task's snapshot
+     * @param task The task
+     * @return true if the task should not be run
+     */
+    final boolean shed(Frame snapshot, Object task) {
+        Deadline deadline = snapshot.deadline;
+        CancellationToken token = snapshot.token;
+        if (deadline != null && deadline.isExpired()) {
+            shed.increment();
+        } else if (token == null || !token.isCancelled()) {
+            return false;
+        }
+        if (task instanceof Future<?>) {
+            ((Future<?>) task).cancel(false);
+        }
+        return true;
+    }
+
+    /**
+     * The exception to fail a shed task with.
+     */
+    static CancellationException shedFailure(Frame snapshot) {
+        Deadline deadline = snapshot.deadline;
+        if (deadline != null && deadline.isExpired()) {
+            return new DeadlineExceededException(deadline);
+        }
+        return new CancellationException("Cancelled: " + snapshot.token);
+    }
+
+    /**
+     * Run a task taken from the queue of one of the pools which own their
+     * threads and have already entered its snapshot, unless it should be
+     * shed, reporting anything it throws to the thread's uncaught exception
+     * handler.
+     *
+     * @param snapshot The snapshot, or null if the task was submitted when
+     * nothing was in scope, in which case it runs outside the scope
+     * @param task The task
+     */
+    final void runTask(Frame snapshot, Runnable task) {
+        CancellationToken.Running running = null;
+        if (snapshot != null) {
+            if (shed(snapshot, task)) {
+                return;
+            }
+            try {
+                running = CancellationToken.begin(snapshot);
+            } catch (CancellationException e) {
+                // Cancelled since shed() checked
+                if (task instanceof Future<?>) {
+                    ((Future<?>) task).cancel(false);
+                }
+                return;
+            }
+        }
+        try {
+            task.run();
+        } catch (RuntimeException | Error e) {
+            if (snapshot != null) {
+                snapshot.attachOrigin(e);
+            }
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+        } finally {
+            CancellationToken.end(running);
+        }
+    }
+
     /**
      * Exit the scope. Must be called symmetrically with enter.
      */
     protected abstract void exit();
 
+    /**
+     * Capture the current contents of this scope as an immutable frame which
+     * can be re-entered later, possibly on another thread. The default
+     * implementation copies the result of <code>contents()</code>; subclasses
+     * which keep their state as frames simply return the current one.
+     *
+     * @return A frame, never null
+     */
+    Frame snapshot() {
+        return newFrame(contents().toArray(), null);
+    }
+
+    /**
+     * Enter this scope with the contents of a frame previously returned by
+     * <code>snapshot()</code>. Must be paired with a call to <code>exit()</code>
+     * exactly as <code>enter()</code> is.
+     *
+     * @param snapshot A snapshot
+     * @return An AutoClosable which exits the scope
+     */
+    QuietAutoClosable enterSnapshot(Frame snapshot) {
+        return enter(snapshot.flatten());
+    }
+
+    /**
+     * The frame current on the calling thread, if any, without capturing it
+     * the way <code>snapshot()</code> does. Scopes which return null here
+     * (the default) do not cache objects created by the unscoped providers of
+     * types bound in them.
+     *
+     * @return A frame or null
+     */
+    Frame currentFrame() {
+        return null;
+    }
+
+    /**
+     * Determine if the contents of a snapshot are exactly what is in scope on
+     * the calling thread right now, by identity, in which case there is no
+     * need to enter it again - e.g. a task run by the thread that submitted
+     * it, or by a worker already holding the same request's snapshot. The
+     * default implementation returns false.
+     *
+     * @param snapshot A snapshot
+     * @return Whether entering it would change nothing
+     */
+    boolean isCurrent(Frame snapshot) {
+        return false;
+    }
+
+    /**
+     * Run some code with the contents of a snapshot in scope. All of the
+     * wrappers created by <code>wrap()</code> and the scoped thread pool come
+     * through here (or <code>callIn()</code> / <code>getIn()</code>), so a
+     * scope which can only establish its contents for the duration of a block
+     * of code, rather than between an enter and an exit, need only override
+     * these.
+     *
+     * @param snapshot A snapshot
+     * @param run The code to run
+     */
+    void runIn(Frame snapshot, Runnable run) {
+        CancellationToken.Running running = CancellationToken.begin(snapshot);
+        try {
+            if (isCurrent(snapshot)) {
+                run.run();
+                return;
+            }
+            enterSnapshot(snapshot);
+            try {
+                run.run();
+            } finally {
+                exit();
+            }
+        } finally {
+            CancellationToken.end(running);
+        }
+    }
+
+    <T> T callIn(Frame snapshot, Callable<T> call) throws Exception {
+        CancellationToken.Running running = CancellationToken.begin(snapshot);
+        try {
+            if (isCurrent(snapshot)) {
+                return call.call();
+            }
+            enterSnapshot(snapshot);
+            try {
+                return call.call();
+            } finally {
+                exit();
+            }
+        } finally {
+            CancellationToken.end(running);
+        }
+    }
+
+    <T> T getIn(Frame snapshot, Supplier<T> supplier) {
+        CancellationToken.Running running = CancellationToken.begin(snapshot);
+        try {
+            if (isCurrent(snapshot)) {
+                return supplier.get();
+            }
+            enterSnapshot(snapshot);
+            try {
+                return supplier.get();
+            } finally {
+                exit();
+            }
+        } finally {
+            CancellationToken.end(running);
+        }
+    }
+
     /**
      * Get an object in scope, if any. Throws an exception if not in scope, or
      * if in scope but not bound (see <code>bindAllowingNulls()</code>).
@@ -219,38 +685,388 @@ public abstract class AbstractScope implements Scope {
     protected abstract <T> T get(Class<T> type);
 
     /**
-     * Test if the caller is in scope.
+     * Get an object in scope using the slot index assigned to its type when it
+     * was bound. The default implementation simply calls <code>get(type)</code>.
+     *
+     * @param <T> The type
+     * @param slot The slot index
+     * @param type The type
+     * @return An object or null
+     */
+    <T> T get(int slot, Class<T> type) {
+        return get(type);
+    }
+
+    /**
+     * Test if the caller is in scope.
+     *
+     * @return
+     */
+    public abstract boolean inScope();
+
+    /**
+     * Used to pre-convert objects passed in on scope entry to their final form.
+     * The default implementation returns the same array it is passed.
+     *
+     * @param originals Objects passed into enter()
+     * @return An array of objects
+     */
+    protected Object[] convertObjects(Object... originals) {
+        return originals;
+    }
+
+    private static final int DEFAULT_ORIGIN_FRAMES = 24;
+    // Null when disabled, so the only cost is one volatile read per snapshot
+    private volatile ScopeOrigin.Tracing originTracing;
+
+    /**
+     * Utility method which will record where work was dispatched from whenever
+     * it is wrapped to run in this scope. Useful for debugging when using
+     * ScopedThreadPools, to track the actual origin stack of something
+     * dispatched to another thread. Equivalent to
+     * <code>setOriginTracing(val ? 1 : 0, 24)</code>.
+     *
+     * @param val
+     */
+    public void setIncludeStackTraces(boolean val) {
+        setOriginTracing(val ? 1 : 0, DEFAULT_ORIGIN_FRAMES);
+    }
+
+    /**
+     * Record the calling code's stack for a sample of the runnables, callables
+     * and other objects wrapped to run in this scope, or submitted to a scoped
+     * executor. The recorded origin is attached as a suppressed exception to
+     * anything the wrapped code throws, and is included when an object is
+     * requested that the scope does not contain.
+     *
+     * @param sampleEvery Record one in this many snapshots; 0 disables tracing,
+     * 1 records every one
+     * @param maxFrames The maximum number of stack frames to record
+     */
+    public void setOriginTracing(int sampleEvery, int maxFrames) {
+        if (sampleEvery < 0 || maxFrames < 1) {
+            throw new IllegalArgumentException("Bad sample rate " + sampleEvery
+                    + " or frame count " + maxFrames);
+        }
+        originTracing = sampleEvery == 0 ? null
+                : new ScopeOrigin.Tracing(sampleEvery, maxFrames);
+    }
+
+    /**
+     * Take a snapshot for a wrapper which will run code in this scope later,
+     * recording its origin if origin tracing is enabled.
+     *
+     * @return A snapshot
+     */
+    final Frame tracedSnapshot() {
+        return traced(snapshot());
+    }
+
+    private Frame traced(Frame result) {
+        int size = result.size();
+        ScopeListener l = listener;
+        if (l != null) {
+            l.onSnapshot(this, size);
+        }
+        ScopeOrigin.Tracing tracing = originTracing;
+        if (tracing != null) {
+            ScopeOrigin origin = tracing.sample();
+            if (origin != null) {
+                result = Frame.traced(result, origin);
+            }
+        }
+        SnapshotTracker tracker = snapshotTracker;
+        if (tracker != null) {
+            tracker.track(result, size);
+        }
+        return result;
+    }
+
+    /**
+     * Take a snapshot holding only the most recently entered object of each
+     * of the passed types, so that whatever else is in scope is not kept
+     * reachable by the wrapper it is for.
+     *
+     * @param types Types, or none for everything in scope
+     * @return A snapshot
+     */
+    final Frame projectedSnapshot(Class<?>... types) {
+        if (types.length == 0) {
+            return tracedSnapshot();
+        }
+        return traced(newFrame(project(types), null));
+    }
+
+    private Object[] project(Class<?>[] types) {
+        // Not snapshot(), which would stop the current frame being recycled
+        Frame current = currentFrame();
+        if (current == null) {
+            current = snapshot();
+        }
+        Object[] result = new Object[types.length];
+        int count = 0;
+        outer:
+        for (Class<?> type : types) {
+            // Lazy contents stay lazy, and shared with the original entry
+            Object found = current.findEntry(type);
+            if (found == null) {
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                if (result[i] == found) {
+                    continue outer;
+                }
+            }
+            result[count++] = found;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Take a snapshot which holds its contents through soft or weak
+     * references.
+     *
+     * @param retention SOFT or WEAK
+     * @param types Types to project the snapshot down to, or none for
+     * everything in scope
+     * @return A snapshot
+     */
+    final WeakSnapshot weakSnapshot(SnapshotRetention retention, Class<?>... types) {
+        Object[] contents = types.length == 0 ? snapshot().flatten() : project(types);
+        ScopeListener l = listener;
+        if (l != null) {
+            l.onSnapshot(this, contents.length);
+        }
+        ScopeOrigin.Tracing tracing = originTracing;
+        ScopeOrigin origin = tracing == null ? null : tracing.sample();
+        WeakSnapshot result = new WeakSnapshot(this, contents, retention, origin);
+        SnapshotTracker tracker = snapshotTracker;
+        if (tracker != null) {
+            // Soft references hold on until there is memory pressure, so
+            // count those as retained
+            tracker.track(result, retention == SnapshotRetention.SOFT
+                    ? contents.length : 0);
+        }
+        return result;
+    }
+
+    // Null unless enabled, so the cost of not tracking is one volatile read
+    // per snapshot
+    private volatile SnapshotTracker snapshotTracker;
+
+    /**
+     * Count the snapshots taken by <code>wrap()</code> and scoped executors
+     * which have not yet been garbage collected, and the scope contents they
+     * keep reachable, for diagnosing memory retained by queued tasks and
+     * long-lived listeners - see <code>liveSnapshots()</code> and
+     * <code>retainedSnapshotEntries()</code>. Only snapshots taken while
+     * tracking is enabled are counted; disabling it discards the counts.
+     *
+     * @param val Whether to track snapshots
+     */
+    public void setSnapshotTracking(boolean val) {
+        synchronized (this) {
+            if (val != (snapshotTracker != null)) {
+                snapshotTracker = val ? new SnapshotTracker() : null;
+            }
+        }
+    }
+
+    /**
+     * Get the number of snapshots taken since snapshot tracking was enabled
+     * which are still reachable. Since snapshots of the same entry share
+     * their frames, and a snapshot is only counted as gone once the garbage
+     * collector has noticed, this is approximate.
+     *
+     * @return A count, or 0 if tracking is not enabled
+     */
+    public long liveSnapshots() {
+        SnapshotTracker tracker = snapshotTracker;
+        return tracker == null ? 0 : tracker.live();
+    }
+
+    /**
+     * Get the total number of scope entries held by the snapshots counted by
+     * <code>liveSnapshots()</code>. Objects shared by several snapshots are
+     * counted once for each, and objects held by weak snapshots are not
+     * counted.
+     *
+     * @return A count, or 0 if tracking is not enabled
+     */
+    public long retainedSnapshotEntries() {
+        SnapshotTracker tracker = snapshotTracker;
+        return tracker == null ? 0 : tracker.retained();
+    }
+
+    // Null unless a listener is registered, so the cost of having none is
+    // one volatile read per event
+    private volatile ScopeListener listener;
+
+    /**
+     * Add a listener which will be notified of entries, exits, lookups and
+     * snapshots in this scope.
+     *
+     * @param listener A listener
+     */
+    public void addScopeListener(ScopeListener listener) {
+        synchronized (this) {
+            this.listener = Listeners.add(this.listener, listener);
+        }
+    }
+
+    public void removeScopeListener(ScopeListener listener) {
+        synchronized (this) {
+            this.listener = Listeners.remove(this.listener, listener);
+        }
+    }
+
+    final void notifyEnter(Frame frame) {
+        ScopeListener l = listener;
+        if (l != null) {
+            l.onEnter(this, frame.depth);
+        }
+    }
+
+    final void notifyExit(Frame frame) {
+        ScopeListener l = listener;
+        if (l != null) {
+            l.onExit(this, frame.depth);
+        }
+    }
+
+    final void notifyWrap() {
+        ScopeListener l = listener;
+        if (l != null) {
+            l.onWrap(this);
+        }
+    }
+
+    private static final class Listeners implements ScopeListener {
+
+        private final ScopeListener[] all;
+
+        private Listeners(ScopeListener[] all) {
+            this.all = all;
+        }
+
+        static ScopeListener add(ScopeListener existing, ScopeListener nue) {
+            if (existing == null) {
+                return nue;
+            }
+            ScopeListener[] old = existing instanceof Listeners
+                    ? ((Listeners) existing).all
+                    : new ScopeListener[]{existing};
+            ScopeListener[] result = Arrays.copyOf(old, old.length + 1);
+            result[old.length] = nue;
+            return new Listeners(result);
+        }
+
+        static ScopeListener remove(ScopeListener existing, ScopeListener toRemove) {
+            if (existing == toRemove) {
+                return null;
+            }
+            if (!(existing instanceof Listeners)) {
+                return existing;
+            }
+            List<ScopeListener> result = new ArrayList<>(Arrays.asList(((Listeners) existing).all));
+            result.remove(toRemove);
+            return result.isEmpty() ? null : result.size() == 1 ? result.get(0)
+                    : new Listeners(result.toArray(new ScopeListener[result.size()]));
+        }
+
+        @Override
+        public void onEnter(AbstractScope scope, int depth) {
+            for (ScopeListener l : all) {
+                l.onEnter(scope, depth);
+            }
+        }
+
+        @Override
+        public void onExit(AbstractScope scope, int depth) {
+            for (ScopeListener l : all) {
+                l.onExit(scope, depth);
+            }
+        }
+
+        @Override
+        public void onLookup(AbstractScope scope, Class<?> type, boolean hit) {
+            for (ScopeListener l : all) {
+                l.onLookup(scope, type, hit);
+            }
+        }
+
+        @Override
+        public void onWrap(AbstractScope scope) {
+            for (ScopeListener l : all) {
+                l.onWrap(scope);
+            }
+        }
+
+        @Override
+        public void onSnapshot(AbstractScope scope, int size) {
+            for (ScopeListener l : all) {
+                l.onSnapshot(scope, size);
+            }
+        }
+    }
+
+    private volatile boolean resolutionCache;
+    private final LongAdder resolutionCacheHits = new LongAdder();
+    private final LongAdder resolutionCacheMisses = new LongAdder();
+
+    /**
+     * Enable or disable memoizing lookups of types which were not bound in
+     * this scope when the scope was entered (and so must be found by searching
+     * the scope contents). Results, including failures to find anything, are
+     * remembered until the scope is next entered or exited on that thread.
+     * Types bound in this scope do not need this and are unaffected.
      *
-     * @return
+     * @param val Whether or not to cache
      */
-    public abstract boolean inScope();
+    public void setResolutionCacheEnabled(boolean val) {
+        resolutionCache = val;
+    }
+
+    public boolean isResolutionCacheEnabled() {
+        return resolutionCache;
+    }
 
     /**
-     * Used to pre-convert objects passed in on scope entry to their final form.
-     * The default implementation returns the same array it is passed.
+     * Get the number of lookups answered from the resolution cache.
      *
-     * @param originals Objects passed into enter()
-     * @return An array of objects
+     * @return A count
      */
-    protected Object[] convertObjects(Object... originals) {
-        return originals;
+    public long resolutionCacheHits() {
+        return resolutionCacheHits.sum();
     }
+
     /**
-     * If true, construct a stack trace for every call to enter(), so that
-     * invocations replanned to another thread can be traced to their origin
-     * call for debugging.
+     * Get the number of lookups which had to search the scope contents while
+     * the resolution cache was enabled.
+     *
+     * @return A count
      */
-    protected volatile boolean includeStackTraces = false;
+    public long resolutionCacheMisses() {
+        return resolutionCacheMisses.sum();
+    }
 
     /**
-     * Utility method which will record stack traces when the scope is entered.
-     * Useful for debugging when using ScopedThreadPools, to track the actual
-     * origin stack of something dispatched to another thread.
+     * Look up a type in a frame, using the resolution cache if enabled.
      *
-     * @param val
+     * @param <T> The type
+     * @param frame A frame, or null
+     * @param slot The type's slot, or -1
+     * @param type The type
+     * @return An object or null
      */
-    public void setIncludeStackTraces(boolean val) {
-        includeStackTraces = val;
+    final <T> T lookup(Frame frame, int slot, Class<T> type) {
+        if (frame == null) {
+            return null;
+        }
+        if (resolutionCache) {
+            return frame.getCached(slot, type, resolutionCacheHits, resolutionCacheMisses);
+        }
+        return frame.get(slot, type);
     }
 
     /**
@@ -327,6 +1143,60 @@ public abstract class AbstractScope implements Scope {
         }
     }
 
+    public void run(Runnable runnable, Object a) {
+        enter(a);
+        try {
+            runnable.run();
+        } finally {
+            exit();
+        }
+    }
+
+    public void run(Runnable runnable, Object a, Object b) {
+        enter(a, b);
+        try {
+            runnable.run();
+        } finally {
+            exit();
+        }
+    }
+
+    public void run(Runnable runnable, Object a, Object b, Object c) {
+        enter(a, b, c);
+        try {
+            runnable.run();
+        } finally {
+            exit();
+        }
+    }
+
+    public <T> T run(Callable<T> callable, Object a) throws Exception {
+        enter(a);
+        try {
+            return callable.call();
+        } finally {
+            exit();
+        }
+    }
+
+    public <T> T run(Callable<T> callable, Object a, Object b) throws Exception {
+        enter(a, b);
+        try {
+            return callable.call();
+        } finally {
+            exit();
+        }
+    }
+
+    public <T> T run(Callable<T> callable, Object a, Object b, Object c) throws Exception {
+        enter(a, b, c);
+        try {
+            return callable.call();
+        } finally {
+            exit();
+        }
+    }
+
     /**
      * Simple way to schedule some work on another thread to be run in-process
      * in an identical scope. Note that all objects in this scope must be
@@ -340,20 +1210,67 @@ public abstract class AbstractScope implements Scope {
         if (!inScope()) {
             throw new IllegalThreadStateException("Not in scope " + this);
         }
-        final Object[] o = contents().toArray();
+        final Frame snapshot = tracedSnapshot();
         executor.submit(new Runnable() {
             @Override
             public void run() {
                 try {
-                    enter(o);
-                    runnable.run();
-                } finally {
-                    exit();
+                    runIn(snapshot, runnable);
+                } catch (RuntimeException | Error e) {
+                    snapshot.attachOrigin(e);
+                    throw e;
                 }
             }
         });
     }
 
+    /**
+     * Start a group of subtasks which run on the passed executor with the
+     * current contents of this scope, captured once for the whole group, and
+     * which are all finished by the time the group is closed. Use it in a
+     * try-with-resources block inside the scope entry the subtasks belong
+     * to.
+     *
+     * @see ScopedFork
+     * @param executor The executor to run subtasks on
+     * @return A fork group
+     */
+    public ScopedFork fork(Executor executor) {
+        return new ScopedFork(this, executor);
+    }
+
+    /**
+     * Create a parallel stream over a collection, whose operations run with
+     * the current contents of this scope on whatever thread processes each
+     * part of it. The scope is captured once, and entered once per split
+     * rather than once per element.
+     *
+     * @param <T> The element type
+     * @param collection A collection
+     * @return A parallel stream
+     */
+    public <T> Stream<T> parallel(Collection<T> collection) {
+        return stream(collection.spliterator(), true);
+    }
+
+    /**
+     * Create a stream whose operations run with the current contents of this
+     * scope, whatever thread they run on and whenever the stream is consumed.
+     * The scope is captured once, and entered once per split rather than once
+     * per element. Stages after a stateful operation such as
+     * <code>sorted()</code> also run in scope, with the exception of stateful
+     * operations on primitive streams made from this one, and comparators
+     * used by a parallel sort.
+     *
+     * @param <T> The element type
+     * @param spliterator A spliterator
+     * @param parallel Whether the stream should be parallel
+     * @return A stream
+     */
+    public <T> Stream<T> stream(Spliterator<T> spliterator, boolean parallel) {
+        return ScopedStream.create(this, tracedSnapshot(), spliterator, parallel);
+    }
+
     /**
      * Wrap a JDK thread pool in one whose submitted runnables will first enter
      * this scope.
@@ -365,9 +1282,54 @@ public abstract class AbstractScope implements Scope {
         if (service instanceof ScopedThreadPool && ((ScopedThreadPool) service).scope == this) {
             return service;
         }
+        if (service instanceof ScheduledExecutorService) {
+            return new ScopedScheduledThreadPool(this, (ScheduledExecutorService) service);
+        }
         return new ScopedThreadPool(this, service);
     }
 
+    /**
+     * Wrap a JDK scheduled thread pool in one whose tasks, including delayed
+     * and periodic ones, will first enter this scope.
+     *
+     * @param service A scheduled executor service
+     * @return A wrapper for that executor service
+     */
+    public ScheduledExecutorService wrapThreadPool(ScheduledExecutorService service) {
+        return (ScheduledExecutorService) wrapThreadPool((ExecutorService) service);
+    }
+
+    /**
+     * Create a hashed-wheel timer with a 10ms tick and 512 buckets, which runs
+     * expired tasks on its own thread, with the scope contents as they were
+     * when each was scheduled.
+     *
+     * @see #newWheelTimer(long, java.util.concurrent.TimeUnit, int, java.util.concurrent.Executor)
+     * @return A scheduled executor service
+     */
+    public ScheduledExecutorService newWheelTimer() {
+        return newWheelTimer(10, TimeUnit.MILLISECONDS, 512, null);
+    }
+
+    /**
+     * Create a hashed-wheel timer - a ScheduledExecutorService suited to
+     * scheduling and cancelling very large numbers of short timeouts, where
+     * the per-task heap maintenance of ScheduledThreadPoolExecutor gets
+     * expensive. Tasks run with the scope contents as they were when they
+     * were scheduled, on the first tick at or after their deadline.
+     *
+     * @param tickDuration The timer's resolution
+     * @param unit The unit of the tick duration
+     * @param wheelSize The number of buckets, rounded up to a power of two;
+     * ideally larger than the longest typical delay divided by the tick
+     * @param dispatch The executor to run expired tasks on, or null to run
+     * them on the timer thread
+     * @return A scheduled executor service
+     */
+    public ScheduledExecutorService newWheelTimer(long tickDuration, TimeUnit unit, int wheelSize, Executor dispatch) {
+        return new WheelTimer(this, tickDuration, unit, wheelSize, dispatch);
+    }
+
     public Provider<ExecutorService> wrapThreadPool(Provider<ExecutorService> exe) {
         return new Provider<ExecutorService>() {
             private ExecutorService val;
@@ -378,11 +1340,172 @@ public abstract class AbstractScope implements Scope {
                     return val;
                 }
                 ExecutorService orig = exe.get();
-                return val = new ScopedThreadPool(AbstractScope.this, orig);
+                return val = wrapThreadPool(orig);
             }
         };
     }
 
+    /**
+     * Create a fixed-size thread pool whose tasks run with the contents of
+     * this scope as of when they were submitted. Since the pool owns its
+     * threads, a worker keeps a snapshot entered across consecutive tasks that
+     * share it, exiting only when the next task needs a different one or the
+     * queue is empty - so fanning many tasks out from one request costs one
+     * scope entry per worker rather than one per task.
+     *
+     * @param threads The number of threads
+     * @return An executor service
+     */
+    public ExecutorService newThreadPool(int threads) {
+        return new ScopedWorkerPool(this, threads);
+    }
+
+    /**
+     * Create a fixed-size thread pool which routes tasks by the request they
+     * were submitted from - the outermost entry into this scope, by identity -
+     * so that tasks fanned out from one request run on the same worker (or one
+     * of two) and keep that request's objects in one CPU's caches. Idle
+     * workers steal queued tasks from busy ones, so a single large request
+     * still uses every thread. As with <code>newThreadPool()</code>, a worker
+     * keeps a snapshot entered across consecutive tasks which share it.
+     *
+     * @param threads The number of threads
+     * @return An executor service
+     */
+    public ExecutorService newAffinityThreadPool(int threads) {
+        return new AffinityThreadPool(this, threads);
+    }
+
+    /**
+     * Create a thread pool which keeps the work of different tenants, or any
+     * other kind of caller identified by an object in this scope, from
+     * crowding each other out. The most recently entered object of the key
+     * type in scope when a task is submitted, looked up as it would be for
+     * injection, selects the task's queue; each key's queue is bounded, each
+     * key may only have so many tasks running at once, and workers serve
+     * keys round-robin.
+     *
+     * @param keyType The type whose instances partition the work, such as a
+     * tenant id
+     * @param threads The number of threads
+     * @param maxQueuedPerKey The number of tasks which may wait per key,
+     * beyond which submissions are rejected
+     * @param maxConcurrentPerKey The number of tasks which may run at once
+     * per key
+     * @return An executor
+     */
+    public BulkheadExecutor newBulkheadExecutor(Class<?> keyType, int threads,
+            int maxQueuedPerKey, int maxConcurrentPerKey) {
+        return new BulkheadExecutor(this, keyType, threads, maxQueuedPerKey, maxConcurrentPerKey);
+    }
+
+    /**
+     * Create an executor which runs the tasks submitted under each key -
+     * the most recently entered object of the key type in scope when a task
+     * is submitted, looked up as it would be for injection - one at a time
+     * and in order, while tasks for different keys run in parallel on the
+     * common fork-join pool.
+     *
+     * @see #newSerialExecutor(java.lang.Class, java.util.concurrent.Executor)
+     * @param keyType The type whose instances tasks are serialized by, such
+     * as a session
+     * @return An executor service
+     */
+    public ExecutorService newSerialExecutor(Class<?> keyType) {
+        return newSerialExecutor(keyType, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create an executor which runs the tasks submitted under each key -
+     * the most recently entered object of the key type in scope when a task
+     * is submitted, looked up as it would be for injection - one at a time
+     * and in order, while tasks for different keys run in parallel on a
+     * shared pool. No thread is ever blocked waiting for a key, and no thread
+     * is dedicated to one. Shutting the returned executor down does not shut
+     * down the pool; if the pool rejects work, the tasks waiting for the key
+     * are discarded and the submission which hit the rejection throws it.
+     *
+     * @param keyType The type whose instances tasks are serialized by, such
+     * as a session
+     * @param pool The pool to run tasks on, which should not itself be
+     * wrapped by this scope
+     * @return An executor service
+     */
+    public ExecutorService newSerialExecutor(Class<?> keyType, Executor pool) {
+        return new KeyedSerialExecutor(this, keyType, pool);
+    }
+
+    /**
+     * Create an executor which starts a new virtual thread for each task
+     * submitted to it, with the contents of this scope at submission time in
+     * place when the task runs (platform threads are used if the JDK does not
+     * support virtual threads).
+     *
+     * @return An executor
+     */
+    public ScopedVirtualThreadExecutor newVirtualThreadExecutor() {
+        return new ScopedVirtualThreadExecutor(this);
+    }
+
+    /**
+     * Wrap a CompletionStage so that every stage chained from it runs with the
+     * current contents of this scope, captured once, on whatever thread it
+     * completes on. Async stages with no explicit executor run on the common
+     * fork-join pool.
+     *
+     * @param <T> The stage's type
+     * @param stage A completion stage
+     * @return A stage which propagates the scope
+     */
+    public <T> ScopedCompletionStage<T> stage(CompletionStage<T> stage) {
+        return stage(stage, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Wrap a CompletionStage so that every stage chained from it runs with the
+     * current contents of this scope, captured once, on whatever thread it
+     * completes on.
+     *
+     * @param <T> The stage's type
+     * @param stage A completion stage
+     * @param defaultExecutor The executor async stages use when none is passed
+     * @return A stage which propagates the scope
+     */
+    public <T> ScopedCompletionStage<T> stage(CompletionStage<T> stage, Executor defaultExecutor) {
+        if (stage instanceof ScopedCompletionStage<?>
+                && ((ScopedCompletionStage<T>) stage).propagates(this, defaultExecutor)) {
+            return (ScopedCompletionStage<T>) stage;
+        }
+        return new ScopedCompletionStage<>(this, tracedSnapshot(), stage.toCompletableFuture(), defaultExecutor);
+    }
+
+    /**
+     * Equivalent of <code>CompletableFuture.supplyAsync()</code> which runs the
+     * supplier, and every stage chained from the result, with the current
+     * contents of this scope.
+     *
+     * @param <T> The type
+     * @param supplier A supplier
+     * @return A completion stage
+     */
+    public <T> ScopedCompletionStage<T> supplyAsync(Supplier<T> supplier) {
+        return supplyAsync(supplier, ForkJoinPool.commonPool());
+    }
+
+    public <T> ScopedCompletionStage<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        ScopedCompletionStage<Void> start = stage(CompletableFuture.completedFuture(null), executor);
+        return start.thenApplyAsync(ignored -> supplier.get());
+    }
+
+    public ScopedCompletionStage<Void> runAsync(Runnable runnable) {
+        return runAsync(runnable, ForkJoinPool.commonPool());
+    }
+
+    public ScopedCompletionStage<Void> runAsync(Runnable runnable, Executor executor) {
+        ScopedCompletionStage<Void> start = stage(CompletableFuture.completedFuture(null), executor);
+        return start.thenRunAsync(runnable);
+    }
+
     /**
      * Wrap a runnable to enter this scope before it is run
      *
@@ -396,13 +1519,60 @@ public abstract class AbstractScope implements Scope {
         if (!inScope()) {
             return runnable;
         }
+        notifyWrap();
         return new WrapRunnable(runnable, this);
     }
 
+    /**
+     * Wrap a runnable submitted to one of the scoped executors which delegate
+     * to some other executor, so that it is shed if its deadline has passed
+     * when it is about to run.
+     *
+     * @param runnable A runnable
+     * @param failFast If true, throw a DeadlineExceededException when shed,
+     * so the future the delegate created for it fails; if false, simply do
+     * not run it
+     * @return A wrapper
+     */
+    final Runnable wrapTask(Runnable runnable, boolean failFast) {
+        if (runnable instanceof WrapRunnable && ((WrapRunnable) runnable).scope == this) {
+            return runnable;
+        }
+        if (!inScope()) {
+            return runnable;
+        }
+        notifyWrap();
+        return new WrapRunnable(runnable, this, tracedSnapshot(),
+                failFast ? WrapRunnable.FAIL_IF_EXPIRED : WrapRunnable.DROP_IF_EXPIRED);
+    }
+
+    final <T> Callable<T> wrapTask(Callable<T> callable) {
+        notifyWrap();
+        return new WrapCallable<>(tracedSnapshot(), callable, true);
+    }
+
+    /**
+     * Hand a task to an executor the way <code>submit()</code> would, but so
+     * that cancelling the token in scope, if any, cancels the returned future
+     * at once if the task has not started yet.
+     *
+     * @param executor The executor
+     * @param callable The task - wrapped already, unless the executor
+     * snapshots the scope itself
+     * @return A future
+     */
+    final <T> Future<T> submitTo(Executor executor, Callable<T> callable) {
+        Frame current = currentFrame();
+        return current == null || current.token == null
+                ? CancellationToken.submit(executor, callable)
+                : CancellationToken.submit(executor, callable, current.token);
+    }
+
     public <T, R> ThrowingFunction<T, R> wrap(ThrowingFunction<T, R> i, AtomicReference<T> arg) {
         if (i instanceof WrapInvokable && ((WrapInvokable) i).scope == this) {
             return i;
         }
+        notifyWrap();
         return new WrapInvokable<>(this, i, arg);
     }
 
@@ -414,10 +1584,12 @@ public abstract class AbstractScope implements Scope {
      * @return A wrapper which delegates to this callable
      */
     public <T> Callable<T> wrap(Callable<T> wrapped) {
+        notifyWrap();
         return new WrapCallable<>(wrapped);
     }
 
     public <T> Callable<T> wrap(Callable<T> callable, Object... contents) {
+        notifyWrap();
         return new WrapCallable<>(callable, contents);
     }
 
@@ -426,6 +1598,7 @@ public abstract class AbstractScope implements Scope {
         if (!inScope()) {
             return (Consumer<T>) consumer;
         }
+        notifyWrap();
         return new WrappedConsumer<>(consumer);
     }
 
@@ -434,6 +1607,7 @@ public abstract class AbstractScope implements Scope {
         if (!inScope()) {
             return (BiConsumer<T, R>) consumer;
         }
+        notifyWrap();
         return new WrappedBiConsumer<>(consumer);
     }
 
@@ -442,51 +1616,223 @@ public abstract class AbstractScope implements Scope {
         if (!inScope()) {
             return (Supplier<T>) supplier;
         }
+        notifyWrap();
         return new WrappedSupplier<>(supplier);
     }
 
+    /**
+     * Wrap a runnable to enter this scope before it is run, with only the
+     * most recently entered objects of the passed types rather than
+     * everything in scope - so a task which is queued for a long time, or
+     * run repeatedly, does not keep everything else that was in scope
+     * reachable.
+     *
+     * @param runnable A runnable
+     * @param types The types it needs
+     * @return A wrapper which delegates to the runnable
+     */
+    public Runnable wrapProjected(Runnable runnable, Class<?>... types) {
+        return wrapProjected(runnable, SnapshotRetention.STRONG, types);
+    }
+
+    /**
+     * Wrap a runnable to enter this scope before it is run, holding what is
+     * in scope with the passed retention, and optionally only the most
+     * recently entered objects of the passed types. If the retention is
+     * SOFT or WEAK and anything captured has been garbage collected when the
+     * wrapper is run, it throws a SnapshotCollectedException rather than
+     * running the runnable.
+     *
+     * @param runnable A runnable
+     * @param retention How to hold what is in scope
+     * @param types The types it needs, or none for everything in scope
+     * @return A wrapper which delegates to the runnable
+     */
+    public Runnable wrapProjected(Runnable runnable, SnapshotRetention retention, Class<?>... types) {
+        if (!inScope()) {
+            return runnable;
+        }
+        notifyWrap();
+        if (retention == SnapshotRetention.STRONG) {
+            return new WrapRunnable(runnable, this, projectedSnapshot(types));
+        }
+        WeakSnapshot snapshot = weakSnapshot(retention, types);
+        return () -> snapshot.run(runnable);
+    }
+
+    /**
+     * Wrap a callable to enter this scope before it is run, with only the
+     * most recently entered objects of the passed types.
+     *
+     * @see #wrapProjected(java.lang.Runnable, java.lang.Class...)
+     * @param <T> The return type
+     * @param callable A callable
+     * @param types The types it needs
+     * @return A wrapper which delegates to the callable
+     */
+    public <T> Callable<T> wrapProjected(Callable<T> callable, Class<?>... types) {
+        return wrapProjected(callable, SnapshotRetention.STRONG, types);
+    }
+
+    /**
+     * Wrap a callable to enter this scope before it is run, holding what is
+     * in scope with the passed retention, and optionally only the most
+     * recently entered objects of the passed types.
+     *
+     * @see #wrapProjected(java.lang.Runnable, SnapshotRetention, java.lang.Class...)
+     * @param <T> The return type
+     * @param callable A callable
+     * @param retention How to hold what is in scope
+     * @param types The types it needs, or none for everything in scope
+     * @return A wrapper which delegates to the callable
+     */
+    public <T> Callable<T> wrapProjected(Callable<T> callable, SnapshotRetention retention, Class<?>... types) {
+        if (!inScope()) {
+            return callable;
+        }
+        notifyWrap();
+        if (retention == SnapshotRetention.STRONG) {
+            return new WrapCallable<>(projectedSnapshot(types), callable);
+        }
+        WeakSnapshot snapshot = weakSnapshot(retention, types);
+        return () -> snapshot.call(callable);
+    }
+
+    /**
+     * Wrap a consumer to enter this scope when called, with only the most
+     * recently entered objects of the passed types.
+     *
+     * @see #wrapProjected(java.lang.Runnable, java.lang.Class...)
+     * @param <T> The argument type
+     * @param consumer A consumer
+     * @param types The types it needs
+     * @return A wrapper which delegates to the consumer
+     */
+    public <T> Consumer<T> wrapProjected(Consumer<? super T> consumer, Class<?>... types) {
+        return wrapProjected(consumer, SnapshotRetention.STRONG, types);
+    }
+
+    /**
+     * Wrap a consumer to enter this scope when called, holding what is in
+     * scope with the passed retention, and optionally only the most recently
+     * entered objects of the passed types.
+     *
+     * @see #wrapProjected(java.lang.Runnable, SnapshotRetention, java.lang.Class...)
+     * @param <T> The argument type
+     * @param consumer A consumer
+     * @param retention How to hold what is in scope
+     * @param types The types it needs, or none for everything in scope
+     * @return A wrapper which delegates to the consumer
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Consumer<T> wrapProjected(Consumer<? super T> consumer, SnapshotRetention retention, Class<?>... types) {
+        if (!inScope()) {
+            return (Consumer<T>) consumer;
+        }
+        notifyWrap();
+        if (retention == SnapshotRetention.STRONG) {
+            return new WrappedConsumer<>(projectedSnapshot(types), consumer);
+        }
+        WeakSnapshot snapshot = weakSnapshot(retention, types);
+        return t -> snapshot.run(() -> consumer.accept(t));
+    }
+
+    /**
+     * Wrap a supplier to enter this scope when called, with only the most
+     * recently entered objects of the passed types.
+     *
+     * @see #wrapProjected(java.lang.Runnable, java.lang.Class...)
+     * @param <T> The type
+     * @param supplier A supplier
+     * @param types The types it needs
+     * @return A wrapper which delegates to the supplier
+     */
+    public <T> Supplier<T> wrapProjected(Supplier<? extends T> supplier, Class<?>... types) {
+        return wrapProjected(supplier, SnapshotRetention.STRONG, types);
+    }
+
+    /**
+     * Wrap a supplier to enter this scope when called, holding what is in
+     * scope with the passed retention, and optionally only the most recently
+     * entered objects of the passed types.
+     *
+     * @see #wrapProjected(java.lang.Runnable, SnapshotRetention, java.lang.Class...)
+     * @param <T> The type
+     * @param supplier A supplier
+     * @param retention How to hold what is in scope
+     * @param types The types it needs, or none for everything in scope
+     * @return A wrapper which delegates to the supplier
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<T> wrapProjected(Supplier<? extends T> supplier, SnapshotRetention retention, Class<?>... types) {
+        if (!inScope()) {
+            return (Supplier<T>) supplier;
+        }
+        notifyWrap();
+        if (retention == SnapshotRetention.STRONG) {
+            return new WrappedSupplier<>(projectedSnapshot(types), supplier);
+        }
+        WeakSnapshot snapshot = weakSnapshot(retention, types);
+        return () -> snapshot.get(supplier);
+    }
+
     private class WrappedSupplier<T> implements Supplier<T> {
 
-        private final Supplier<? extends T> wrapped;
-        private final Object[] contents;
+        private final Supplier<T> wrapped;
+        private final Frame snapshot;
 
+        @SuppressWarnings("unchecked")
         WrappedSupplier(Supplier<? extends T> wrapped) {
-            this.wrapped = wrapped;
-            this.contents = AbstractScope.this.contents().toArray();
+            this(tracedSnapshot(), wrapped);
+        }
+
+        @SuppressWarnings("unchecked")
+        WrappedSupplier(Frame snapshot, Supplier<? extends T> wrapped) {
+            this.wrapped = (Supplier<T>) wrapped;
+            this.snapshot = snapshot;
         }
 
         @Override
         public T get() {
-            try ( QuietAutoClosable qac = enter(contents)) {
-                return wrapped.get();
+            try {
+                return getIn(snapshot, wrapped);
+            } catch (RuntimeException | Error e) {
+                snapshot.attachOrigin(e);
+                throw e;
             }
         }
 
         @Override
         public String toString() {
-            return "Wrap(" + contents.length + " " + wrapped + ")";
+            return "Wrap(" + snapshot.size() + " " + wrapped + ")";
         }
     }
 
     private class WrappedConsumer<T> implements Consumer<T> {
 
         private final Consumer<? super T> wrapped;
-        private final Object[] contents;
+        private final Frame snapshot;
 
         WrappedConsumer(Consumer<? super T> wrapped) {
+            this(tracedSnapshot(), wrapped);
+        }
+
+        WrappedConsumer(Frame snapshot, Consumer<? super T> wrapped) {
             this.wrapped = wrapped;
-            this.contents = AbstractScope.this.contents().toArray();
+            this.snapshot = snapshot;
         }
 
         WrappedConsumer(WrappedConsumer<T> other, Consumer<? super T> next) {
-            this.wrapped = next;
-            this.contents = other.contents;
+            this(other.snapshot, next);
         }
 
         @Override
         public void accept(T t) {
-            try ( QuietAutoClosable qac = enter(contents)) {
-                wrapped.accept(t);
+            try {
+                runIn(snapshot, () -> wrapped.accept(t));
+            } catch (RuntimeException | Error e) {
+                snapshot.attachOrigin(e);
+                throw e;
             }
         }
 
@@ -497,29 +1843,32 @@ public abstract class AbstractScope implements Scope {
 
         @Override
         public String toString() {
-            return "Wrap(" + contents.length + " " + wrapped + ")";
+            return "Wrap(" + snapshot.size() + " " + wrapped + ")";
         }
     }
 
     private class WrappedBiConsumer<T, R> implements BiConsumer<T, R> {
 
         private final BiConsumer<? super T, ? super R> wrapped;
-        private final Object[] contents;
+        private final Frame snapshot;
 
         WrappedBiConsumer(BiConsumer<? super T, ? super R> wrapped) {
             this.wrapped = wrapped;
-            this.contents = AbstractScope.this.contents().toArray();
+            this.snapshot = tracedSnapshot();
         }
 
         WrappedBiConsumer(WrappedBiConsumer<T, R> other, BiConsumer<? super T, ? super R> next) {
             this.wrapped = next;
-            this.contents = other.contents;
+            this.snapshot = other.snapshot;
         }
 
         @Override
         public void accept(T t, R r) {
-            try ( QuietAutoClosable qac = enter(contents)) {
-                wrapped.accept(t, r);
+            try {
+                runIn(snapshot, () -> wrapped.accept(t, r));
+            } catch (RuntimeException | Error e) {
+                snapshot.attachOrigin(e);
+                throw e;
             }
         }
 
@@ -530,31 +1879,44 @@ public abstract class AbstractScope implements Scope {
 
         @Override
         public String toString() {
-            return "Wrap(" + contents.length + " " + wrapped + ")";
+            return "Wrap(" + snapshot.size() + " " + wrapped + ")";
         }
     }
 
     private class WrapCallable<T> implements Callable<T> {
 
         private final Callable<T> wrapped;
-        private final Object[] contents;
+        private final Frame snapshot;
+        private final boolean shedIfExpired;
 
         public WrapCallable(Callable<T> wrapped, Object... contents) {
-            this.wrapped = wrapped;
-            List<Object> l = AbstractScope.this.contents();
-            l.addAll(Arrays.asList(contents));
-            this.contents = l.toArray();
+            this(newFrame(contents, tracedSnapshot()), wrapped);
         }
 
         public WrapCallable(Callable<T> wrapped) {
+            this(tracedSnapshot(), wrapped);
+        }
+
+        WrapCallable(Frame snapshot, Callable<T> wrapped) {
+            this(snapshot, wrapped, false);
+        }
+
+        WrapCallable(Frame snapshot, Callable<T> wrapped, boolean shedIfExpired) {
             this.wrapped = wrapped;
-            contents = contents().toArray(new Object[0]);
+            this.snapshot = snapshot;
+            this.shedIfExpired = shedIfExpired;
         }
 
         @Override
         public T call() throws Exception {
-            try ( QuietAutoClosable qac = enter(contents)) {
-                return wrapped.call();
+            if (shedIfExpired && shed(snapshot, wrapped)) {
+                throw shedFailure(snapshot);
+            }
+            try {
+                return callIn(snapshot, wrapped);
+            } catch (Exception | Error e) {
+                snapshot.attachOrigin(e);
+                throw e;
             }
         }
     }
@@ -563,27 +1925,42 @@ public abstract class AbstractScope implements Scope {
 
     static class WrapRunnable implements Runnable {
 
+        static final byte RUN_ALWAYS = 0;
+        static final byte DROP_IF_EXPIRED = 1;
+        static final byte FAIL_IF_EXPIRED = 2;
         private final Runnable run;
         private final AbstractScope scope;
-        private final Object[] scopeContents;
-        private final RuntimeException t = new RuntimeException(); //XXX deleteme
+        private final Frame snapshot;
+        private final byte deadlinePolicy;
 
         WrapRunnable(Runnable run, AbstractScope scope) {
+            this(run, scope, scope.tracedSnapshot());
+        }
+
+        WrapRunnable(Runnable run, AbstractScope scope, Frame snapshot) {
+            this(run, scope, snapshot, RUN_ALWAYS);
+        }
+
+        WrapRunnable(Runnable run, AbstractScope scope, Frame snapshot, byte deadlinePolicy) {
             this.run = run;
             this.scope = scope;
-            scopeContents = scope.contents().toArray();
+            this.snapshot = snapshot;
+            this.deadlinePolicy = deadlinePolicy;
         }
 
         @Override
         public void run() {
-            scope.enter(scopeContents);
+            if (deadlinePolicy != RUN_ALWAYS && scope.shed(snapshot, run)) {
+                if (deadlinePolicy == FAIL_IF_EXPIRED) {
+                    throw shedFailure(snapshot);
+                }
+                return;
+            }
             try {
-                run.run();
-            } catch (RuntimeException e) {
-                t.initCause(e);
-                throw t;
-            } finally {
-                scope.exit();
+                scope.runIn(snapshot, run);
+            } catch (RuntimeException | Error e) {
+                snapshot.attachOrigin(e);
+                throw e;
             }
         }
 
@@ -593,7 +1970,7 @@ public abstract class AbstractScope implements Scope {
 
         @Override
         public String toString() {
-            return "Wrapper{" + run + "} with " + Arrays.asList(scopeContents);
+            return "Wrapper{" + run + "} with " + snapshot.toList();
         }
     }
 
@@ -601,13 +1978,13 @@ public abstract class AbstractScope implements Scope {
 
         private final AbstractScope scope;
         private final ThrowingFunction<T, R> invokable;
-        private final Object[] scopeContents;
+        private final Frame snapshot;
         private final AtomicReference<T> arg;
 
         WrapInvokable(AbstractScope scope, ThrowingFunction<T, R> callable, AtomicReference<T> arg) {
             this.scope = scope;
             this.invokable = callable;
-            scopeContents = scope.contents().toArray();
+            snapshot = scope.tracedSnapshot();
             this.arg = arg;
         }
 
@@ -622,11 +1999,11 @@ public abstract class AbstractScope implements Scope {
 
         @Override
         public R apply(T argument) throws Exception {
-            scope.enter(scopeContents);
             try {
-                return invokable.apply(arg.get());
-            } finally {
-                scope.exit();
+                return scope.callIn(snapshot, () -> invokable.apply(arg.get()));
+            } catch (Exception | Error e) {
+                snapshot.attachOrigin(e);
+                throw e;
             }
         }
     }
@@ -659,17 +2036,12 @@ public abstract class AbstractScope implements Scope {
                         + " Scope contents: "
                         + scopeContents(contents)
                         + " Bound in scope: " + types(types) + " " + nullableTypes;
-                IllegalStateException ise = new IllegalStateException(new AlignedText(message).toString());
-
-                if (includeStackTraces) {
-//                    Throwable curr = ise;
-//                    for (Throwable t : lookup.lookupAll(Throwable.class)) {
-//                        if (curr.getCause() == null) {
-//                            curr.initCause(t);
-//                        }
-//                        curr = t;
-//                    }
+                ScopeOrigin origin = snapshot().origin();
+                if (origin != null) {
+                    message += "\nScope contents were captured on thread "
+                            + origin.threadName() + " - see cause for where.";
                 }
+                IllegalStateException ise = new IllegalStateException(new AlignedText(message).toString(), origin);
                 throw ise;
             } else {
                 throw new IllegalStateException(info + " not in this scope, and "
@@ -709,17 +2081,25 @@ public abstract class AbstractScope implements Scope {
 
         private final Provider<T> delegate;
         private final Class<T> type;
+        private final int slot;
 
         ProviderOverLookup(Class<T> type, Provider<T> delegate) {
             this.type = type;
             this.delegate = delegate;
+            this.slot = slot(type);
         }
 
         @Override
         public T get() {
-            T result = AbstractScope.this.get(type);
-            if (result == null) {
-                result = delegate == null ? null : delegate.get();
+            T result = AbstractScope.this.get(slot, type);
+            ScopeListener l = listener;
+            if (l != null) {
+                l.onLookup(AbstractScope.this, type, result != null);
+            }
+            if (result == null && delegate != null) {
+                Frame frame = currentFrame();
+                // Create at most one per entry, as a scope should
+                result = frame == null ? delegate.get() : frame.provision(this, delegate);
             }
             return result;
         }
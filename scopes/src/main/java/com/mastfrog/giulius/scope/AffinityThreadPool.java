@@ -0,0 +1,325 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread pool which routes tasks by the request they belong to - the root
+ * frame of their snapshot, by identity - so that tasks fanned out from one
+ * request run on the same worker where possible, keep that request's
+ * snapshot entered across tasks, and keep its objects in one CPU's caches.
+ * <p/>
+ * Each request has two candidate workers derived from the identity of its
+ * root frame; a task goes to the first unless its queue is more than
+ * SPILL tasks deeper than the second's. Idle workers steal from the tail of
+ * other workers' queues, so a pool kept unbalanced by one large request still
+ * uses all of its threads.
+ *
+ * @author Tim Boudreau
+ */
+final class AffinityThreadPool extends ScopedExecutorService {
+
+    private static final int SPILL = 8;
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private final AbstractScope scope;
+    private final Worker[] workers;
+    private final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch terminated;
+    private final LongAdder reentries = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+    private final LongAdder steals = new LongAdder();
+    private volatile boolean shutdown;
+    private volatile boolean stopped;
+
+    AffinityThreadPool(AbstractScope scope, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be > 0: " + threads);
+        }
+        this.scope = scope;
+        terminated = new CountDownLatch(threads);
+        workers = new Worker[threads];
+        int id = IDS.incrementAndGet();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i);
+        }
+        for (Worker w : workers) {
+            Thread t = new ScopedThread(w, "scoped-affinity-" + id + "-" + w.index);
+            t.setDaemon(true);
+            w.thread = t;
+            t.start();
+        }
+    }
+
+    long reentries() {
+        return reentries.sum();
+    }
+
+    long reuses() {
+        return reuses.sum();
+    }
+
+    long steals() {
+        return steals.sum();
+    }
+
+    private Worker route(Frame snapshot) {
+        int n = workers.length;
+        if (n == 1) {
+            return workers[0];
+        }
+        // Tasks submitted out of scope all hash alike
+        int hash = snapshot == null ? 0 : System.identityHashCode(snapshot.root()) * 0x9E3779B9;
+        int first = Math.floorMod(hash, n);
+        int second = Math.floorMod(first + 1 + Math.floorMod(hash >>> 16, n - 1), n);
+        Worker a = workers[first];
+        Worker b = workers[second];
+        return a.size.get() > b.size.get() + SPILL ? b : a;
+    }
+
+    @Override
+    AbstractScope scope() {
+        return scope;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Shut down");
+        }
+        Task task = new Task(scope.inScope() ? scope.tracedSnapshot() : null, command);
+        Worker target = route(task.snapshot);
+        target.push(task);
+        if (shutdown && target.remove(task)) {
+            // Shut down since the check above; workers which saw no work
+            // may already have exited, so it might never run
+            throw new RejectedExecutionException("Shut down");
+        }
+        boolean targetParked = target.parked;
+        if (targetParked) {
+            LockSupport.unpark(target.thread);
+        }
+        if (!targetParked || target.size.get() > 1) {
+            // The target is busy, or will be with the first of its tasks
+            signalIdle();
+        }
+    }
+
+    private void signalIdle() {
+        for (Worker helper; (helper = idle.poll()) != null;) {
+            helper.queued.set(false);
+            LockSupport.unpark(helper.thread);
+            if (helper.parked) {
+                break;
+            }
+        }
+    }
+
+    private Task steal(Worker thief) {
+        int n = workers.length;
+        for (int i = 1; i < n; i++) {
+            Worker victim = workers[(thief.index + i) % n];
+            Task result = victim.queue.pollLast();
+            if (result != null) {
+                steals.increment();
+                if (victim.size.decrementAndGet() > 0) {
+                    // More left - wake someone else to help too
+                    signalIdle();
+                }
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasWork() {
+        for (Worker w : workers) {
+            if (!w.queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        for (Worker w : workers) {
+            LockSupport.unpark(w.thread);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        stopped = true;
+        List<Runnable> result = new ArrayList<>();
+        for (Worker w : workers) {
+            for (Task t; (t = w.queue.pollFirst()) != null;) {
+                w.size.decrementAndGet();
+                result.add(t.task);
+            }
+            w.thread.interrupt();
+            LockSupport.unpark(w.thread);
+        }
+        return result.isEmpty() ? Collections.emptyList() : result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private static final class Task {
+
+        final Frame snapshot;
+        final Runnable task;
+
+        Task(Frame snapshot, Runnable task) {
+            this.snapshot = snapshot;
+            this.task = task;
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        final int index;
+        final ConcurrentLinkedDeque<Task> queue = new ConcurrentLinkedDeque<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean queued = new AtomicBoolean();
+        volatile boolean parked;
+        Thread thread;
+        private Frame entered;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        void push(Task task) {
+            size.incrementAndGet();
+            queue.addLast(task);
+        }
+
+        boolean remove(Task task) {
+            if (queue.removeLastOccurrence(task)) {
+                size.decrementAndGet();
+                return true;
+            }
+            // Already taken by a worker, which will run it, or by
+            // shutdownNow(), which returns it
+            return false;
+        }
+
+        private Task next() {
+            Task result = queue.pollFirst();
+            if (result != null) {
+                size.decrementAndGet();
+                return result;
+            }
+            return steal(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    Task task = next();
+                    if (task != null) {
+                        runTask(task);
+                        continue;
+                    }
+                    // Idle - do not hold on to anyone's request
+                    leave();
+                    if (shutdown && !hasWork()) {
+                        break;
+                    }
+                    parked = true;
+                    if (queued.compareAndSet(false, true)) {
+                        idle.add(this);
+                    }
+                    // Recheck after publishing parked, so a concurrent
+                    // submitter either sees it or we see its task
+                    if (!hasWork() && !shutdown) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                }
+            } finally {
+                leave();
+                terminated.countDown();
+            }
+        }
+
+        private void runTask(Task task) {
+            if (task.snapshot == null) {
+                // Submitted from outside the scope, so run outside it
+                leave();
+            } else if (entered == null) {
+                enter(task.snapshot);
+            } else if (entered.isEquivalentTo(task.snapshot)) {
+                reuses.increment();
+            } else {
+                leave();
+                enter(task.snapshot);
+            }
+            // As ThreadPoolExecutor does between tasks
+            Thread.interrupted();
+            scope.runTask(task.snapshot, task.task);
+        }
+
+        private void enter(Frame snapshot) {
+            scope.enterSnapshot(snapshot);
+            entered = snapshot;
+            reentries.increment();
+        }
+
+        private void leave() {
+            if (entered != null) {
+                entered = null;
+                scope.exit();
+            }
+        }
+    }
+}
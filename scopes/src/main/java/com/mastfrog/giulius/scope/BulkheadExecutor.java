@@ -0,0 +1,341 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread pool which isolates the work of different tenants (or any other
+ * kind of caller) from each other. Each task is filed under a key - the
+ * object of some type, such as a tenant id, in scope when the task is
+ * submitted, looked up the same way the scope would look it up to inject it
+ * - and each key gets its own bounded queue and its own limit on how many of
+ * its tasks may run at once. Workers take tasks from the keys with work
+ * waiting in round-robin order, so one busy key cannot starve the others, and
+ * a key whose queue is full has its submissions rejected without affecting
+ * anyone else's.
+ * <p/>
+ * Tasks submitted when no object of the key type is in scope share a single
+ * queue, under the key <code>null</code>. As with the scope's other thread
+ * pools, tasks run with the scope contents as of when they were submitted.
+ * <p/>
+ * Obtain one from <code>AbstractScope.newBulkheadExecutor()</code>.
+ *
+ * @author Tim Boudreau
+ */
+public final class BulkheadExecutor extends ScopedExecutorService {
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private final AbstractScope scope;
+    private final Class<?> keyType;
+    private final int maxQueuedPerKey;
+    private final int maxConcurrentPerKey;
+    private final Thread[] workers;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // Guarded by lock.  Keys with nothing queued or running are removed, so
+    // a stream of distinct keys does not leak
+    private final Map<Object, Partition> partitions = new HashMap<>();
+    // Guarded by lock.  Partitions with queued tasks which are below their
+    // concurrency limit, in the order they should be served
+    private final ArrayDeque<Partition> ready = new ArrayDeque<>();
+    private final LongAdder rejected = new LongAdder();
+    private final CountDownLatch terminated;
+    private volatile boolean shutdown;
+
+    BulkheadExecutor(AbstractScope scope, Class<?> keyType, int threads,
+            int maxQueuedPerKey, int maxConcurrentPerKey) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be > 0: " + threads);
+        }
+        if (maxQueuedPerKey <= 0 || maxConcurrentPerKey <= 0) {
+            throw new IllegalArgumentException("Bad queue size " + maxQueuedPerKey
+                    + " or concurrency " + maxConcurrentPerKey);
+        }
+        this.scope = scope;
+        this.keyType = keyType;
+        this.maxQueuedPerKey = maxQueuedPerKey;
+        this.maxConcurrentPerKey = maxConcurrentPerKey;
+        terminated = new CountDownLatch(threads);
+        workers = new Thread[threads];
+        int id = IDS.incrementAndGet();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new ScopedThread(new Worker(), "scoped-bulkhead-" + id + "-" + i);
+            workers[i].setDaemon(true);
+        }
+        for (Thread t : workers) {
+            t.start();
+        }
+    }
+
+    @Override
+    AbstractScope scope() {
+        return scope;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Frame snapshot = scope.inScope() ? scope.tracedSnapshot() : null;
+        Object key = snapshot == null ? null : snapshot.get(scope.slotIfBound(keyType), keyType);
+        Task task = new Task(snapshot, command);
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Shut down: " + this);
+            }
+            Partition p = partitions.get(key);
+            if (p == null) {
+                partitions.put(key, p = new Partition(key));
+            } else if (p.queue.size() >= maxQueuedPerKey) {
+                rejected.increment();
+                throw new RejectedExecutionException("Queue full for " + key
+                        + " (" + maxQueuedPerKey + ")");
+            }
+            p.queue.add(task);
+            makeReady(p);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Call with the lock held
+    private void makeReady(Partition p) {
+        if (!p.ready && !p.queue.isEmpty() && p.running < maxConcurrentPerKey) {
+            p.ready = true;
+            ready.add(p);
+            available.signal();
+        }
+    }
+
+    /**
+     * Get the number of tasks waiting to run for a key.
+     *
+     * @param key A key, or null for tasks submitted with none in scope
+     * @return The number of queued tasks
+     */
+    public int queueDepth(Object key) {
+        lock.lock();
+        try {
+            Partition p = partitions.get(key);
+            return p == null ? 0 : p.queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of tasks running for a key.
+     *
+     * @param key A key, or null for tasks submitted with none in scope
+     * @return The number of running tasks
+     */
+    public int running(Object key) {
+        lock.lock();
+        try {
+            Partition p = partitions.get(key);
+            return p == null ? 0 : p.running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of tasks waiting to run for every key which has any
+     * queued or running.
+     *
+     * @return A map of key to queue depth
+     */
+    public Map<Object, Integer> queueDepths() {
+        lock.lock();
+        try {
+            Map<Object, Integer> result = new HashMap<>(partitions.size());
+            for (Partition p : partitions.values()) {
+                result.put(p.key, p.queue.size());
+            }
+            return Collections.unmodifiableMap(result);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of tasks rejected because their key's queue was full.
+     *
+     * @return A count
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> result = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Partition p : partitions.values()) {
+                for (Task t; (t = p.queue.poll()) != null;) {
+                    result.add(t.task);
+                }
+            }
+            ready.clear();
+            partitions.values().removeIf(p -> p.running == 0);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+        return result.isEmpty() ? Collections.emptyList() : result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + keyType.getSimpleName()
+                + " queued " + queueDepths() + " rejected " + rejectedCount() + ")";
+    }
+
+    private static final class Partition {
+
+        final Object key;
+        final ArrayDeque<Task> queue = new ArrayDeque<>();
+        int running;
+        boolean ready;
+
+        Partition(Object key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Task {
+
+        final Frame snapshot;
+        final Runnable task;
+
+        Task(Frame snapshot, Runnable task) {
+            this.snapshot = snapshot;
+            this.task = task;
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                for (;;) {
+                    Partition p;
+                    Task task;
+                    lock.lock();
+                    try {
+                        while (ready.isEmpty()) {
+                            // Anything still queued belongs to a key at its
+                            // limit, whose running task's worker will take it
+                            if (shutdown) {
+                                return;
+                            }
+                            available.awaitUninterruptibly();
+                        }
+                        p = ready.poll();
+                        p.ready = false;
+                        task = p.queue.poll();
+                        p.running++;
+                        // To the back of the line, if it has more
+                        makeReady(p);
+                    } finally {
+                        lock.unlock();
+                    }
+                    try {
+                        // As ThreadPoolExecutor does between tasks
+                        Thread.interrupted();
+                        if (task.snapshot == null) {
+                            // Submitted from outside the scope
+                            scope.runTask(null, task.task);
+                        } else {
+                            scope.enterSnapshot(task.snapshot);
+                            try {
+                                scope.runTask(task.snapshot, task.task);
+                            } finally {
+                                scope.exit();
+                            }
+                        }
+                    } finally {
+                        lock.lock();
+                        try {
+                            p.running--;
+                            if (p.queue.isEmpty() && p.running == 0) {
+                                partitions.remove(p.key);
+                            } else {
+                                makeReady(p);
+                            }
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                }
+            } finally {
+                terminated.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+/**
+ * What closing a cancellable scope entry does to the work it spawned.
+ *
+ * @see ReentrantScope#enterCancellable(CancellationToken, CancelPolicy,
+ * java.lang.Object...)
+ * @author Tim Boudreau
+ */
+public enum CancelPolicy {
+    /**
+     * Leave it alone - the token can still be cancelled explicitly.
+     */
+    NONE,
+    /**
+     * Cancel the token, so that anything which has not started will not, but
+     * let anything already running finish.
+     */
+    CANCEL_QUEUED,
+    /**
+     * Cancel the token and interrupt anything already running.
+     */
+    INTERRUPT_RUNNING;
+}
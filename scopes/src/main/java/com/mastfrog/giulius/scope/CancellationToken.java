@@ -0,0 +1,301 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Links the work a scope entry spawns - tasks submitted to scoped executors,
+ * and runnables, callables and callbacks wrapped with <code>wrap()</code> -
+ * back to the entry, so that if the work it was doing is abandoned, that work
+ * can be abandoned too. Enter a scope with a token among its contents (or use
+ * <code>ReentrantScope.enterCancellable()</code>), and every snapshot taken
+ * from that entry carries it. Once it is cancelled, wrapped code which has not
+ * started yet will not run - futures returned by a scoped executor's
+ * <code>submit()</code> are cancelled immediately, so callers blocked in
+ * <code>get()</code> are released, scoped executors drop anything else when
+ * they reach it, and wrappers throw a CancellationException - and code which
+ * is running can be interrupted.
+ * <p/>
+ * A token entered with <code>enterCancellable()</code> while another is in
+ * scope is cancelled along with it.
+ *
+ * @author Tim Boudreau
+ */
+public final class CancellationToken {
+
+    private static final AtomicReferenceFieldUpdater<CancellationToken, CancellationToken> PARENT
+            = AtomicReferenceFieldUpdater.newUpdater(CancellationToken.class, CancellationToken.class, "parent");
+    private volatile boolean cancelled;
+    private volatile CancellationToken parent;
+    private final Set<Running> running = ConcurrentHashMap.newKeySet();
+    private final Set<CancellationToken> children = ConcurrentHashMap.newKeySet();
+    private final Set<Queued<?>> queued = ConcurrentHashMap.newKeySet();
+
+    public boolean isCancelled() {
+        for (CancellationToken t = this; t != null; t = t.parent) {
+            if (t.cancelled) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cancel this token, and any tokens entered inside the entry that owns it.
+     * Wrapped code carrying it which has not yet started will not run.
+     *
+     * @param interruptRunning Whether to also interrupt threads which are
+     * running wrapped code carrying it now
+     */
+    public void cancel(boolean interruptRunning) {
+        cancelled = true;
+        for (Queued<?> q : queued) {
+            q.cancelQueued();
+        }
+        if (interruptRunning) {
+            for (Running r : running) {
+                r.interrupt();
+            }
+        }
+        for (CancellationToken child : children) {
+            child.cancel(interruptRunning);
+        }
+    }
+
+    /**
+     * Make a token entered inside the entry owning this one be cancelled with
+     * it, unless it already has an owner or is one of this one's.
+     *
+     * @return true if the child was adopted, in which case the caller should
+     * call <code>release()</code> when the nested entry exits
+     */
+    boolean adopt(CancellationToken child) {
+        for (CancellationToken t = this; t != null; t = t.parent) {
+            if (t == child) {
+                return false;
+            }
+        }
+        if (PARENT.compareAndSet(child, null, this)) {
+            children.add(child);
+            if (cancelled) {
+                child.cancel(false);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stop tracking an adopted token once the entry it was entered with has
+     * exited, so a long-lived parent does not accumulate one per nested entry.
+     * The child keeps its parent, so work still holding a snapshot of it sees
+     * the parent's cancellation, but cancelling the parent no longer interrupts
+     * that work.
+     */
+    void release(CancellationToken child) {
+        children.remove(child);
+    }
+
+    int childCount() {
+        return children.size();
+    }
+
+    /**
+     * Record that the calling thread is about to run code in a snapshot, so
+     * it can be interrupted if the snapshot's token is cancelled.
+     *
+     * @param snapshot A snapshot
+     * @return A registration to pass to <code>end()</code>, or null if the
+     * snapshot has no token
+     * @throws CancellationException if the token has been cancelled
+     */
+    static Running begin(Frame snapshot) {
+        CancellationToken token = snapshot.token;
+        if (token == null) {
+            return null;
+        }
+        token.checkCancelled();
+        Running result = new Running(token);
+        token.running.add(result);
+        // Recheck, in case cancel() iterated before we were added
+        if (token.isCancelled()) {
+            end(result);
+            token.checkCancelled();
+        }
+        return result;
+    }
+
+    static void end(Running running) {
+        if (running != null) {
+            boolean interrupted = running.finish();
+            running.token.running.remove(running);
+            if (interrupted) {
+                // Do not leave the interrupt for whatever this thread runs
+                // next, which may belong to a token nobody cancelled
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Hand a task submitted from a snapshot carrying the passed tokens to an
+     * executor, returning a future which cancelling any of them cancels
+     * immediately if the task has not started.
+     *
+     * @param executor The executor
+     * @param callable The task
+     * @param tokens The snapshot's tokens, if any
+     * @return A future
+     */
+    static <T> FutureTask<T> submit(Executor executor, Callable<T> callable, CancellationToken... tokens) {
+        if (tokens.length == 0) {
+            FutureTask<T> result = new FutureTask<>(callable);
+            executor.execute(result);
+            return result;
+        }
+        Queued<T> result = new Queued<>(callable, tokens);
+        executor.execute(result);
+        result.enqueue();
+        return result;
+    }
+
+    int queuedCount() {
+        return queued.size();
+    }
+
+    void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Cancelled: " + this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CancellationToken@" + Integer.toHexString(System.identityHashCode(this))
+                + (isCancelled() ? "(cancelled)" : "");
+    }
+
+    /**
+     * A submitted task which cancelling any of its tokens cancels, as long as
+     * it has not started. It is registered with them only while it waits to
+     * run, and whichever of starting and cancellation happens first wins.
+     */
+    static final class Queued<T> extends FutureTask<T> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Queued> CLAIMED
+                = AtomicIntegerFieldUpdater.newUpdater(Queued.class, "claimed");
+        private final CancellationToken[] tokens;
+        private volatile int claimed;
+
+        Queued(Callable<T> callable, CancellationToken[] tokens) {
+            super(callable);
+            this.tokens = tokens;
+        }
+
+        // Called once an executor has accepted the task, so one which was
+        // rejected is never registered
+        void enqueue() {
+            for (CancellationToken token : tokens) {
+                token.queued.add(this);
+            }
+            if (claimed != 0 || isDone()) {
+                // Started or cancelled before we were added
+                dequeue();
+                return;
+            }
+            // Recheck, in case cancel() iterated before we were added
+            for (CancellationToken token : tokens) {
+                if (token.isCancelled()) {
+                    cancelQueued();
+                    return;
+                }
+            }
+        }
+
+        void cancelQueued() {
+            if (CLAIMED.compareAndSet(this, 0, 1)) {
+                cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (CLAIMED.compareAndSet(this, 0, 1)) {
+                dequeue();
+                super.run();
+            }
+        }
+
+        @Override
+        protected void done() {
+            dequeue();
+        }
+
+        private void dequeue() {
+            for (CancellationToken token : tokens) {
+                token.queued.remove(this);
+            }
+        }
+    }
+
+    static final class Running {
+
+        private final CancellationToken token;
+        private final Thread thread = Thread.currentThread();
+        private boolean done;
+        private boolean interrupted;
+
+        Running(CancellationToken token) {
+            this.token = token;
+        }
+
+        // Synchronized so a thread which has moved on to something else is
+        // never interrupted
+        synchronized void interrupt() {
+            if (!done && thread != Thread.currentThread()) {
+                thread.interrupt();
+                interrupted = true;
+            }
+        }
+
+        /**
+         * Mark the code as finished.
+         *
+         * @return Whether it was interrupted by cancellation
+         */
+        synchronized boolean finish() {
+            done = true;
+            return interrupted;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A point in time by which the work done in a scope should be finished.
+ * Entering a scope with a Deadline among its contents - see
+ * <code>AbstractScope.enterWithDeadline()</code> - makes it travel with every
+ * snapshot taken of the scope, so work wrapped to run later or on another
+ * thread carries it too, and the scoped executors will not start a task whose
+ * deadline has already passed. When entries are nested, the earliest
+ * deadline applies.
+ * <p/>
+ * Since a Deadline is ordinary scope contents, it can be injected if it is
+ * bound in the scope.
+ *
+ * @author Tim Boudreau
+ */
+public final class Deadline implements Comparable<Deadline> {
+
+    private final Instant instant;
+    // In terms of System.nanoTime(), so checking it is cheap and immune to
+    // changes of the wall clock
+    private final long nanoTime;
+
+    private Deadline(Instant instant, long nanoTime) {
+        this.instant = instant;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Create a deadline at some point in time.
+     *
+     * @param instant When the deadline expires
+     * @return A deadline
+     */
+    public static Deadline at(Instant instant) {
+        long now = System.nanoTime();
+        return new Deadline(instant, now + clamp(Duration.between(Instant.now(), instant)));
+    }
+
+    /**
+     * Create a deadline some amount of time from now.
+     *
+     * @param timeout How long until the deadline expires
+     * @return A deadline
+     */
+    public static Deadline after(Duration timeout) {
+        long now = System.nanoTime();
+        return new Deadline(Instant.now().plus(timeout), now + clamp(timeout));
+    }
+
+    private static long clamp(Duration duration) {
+        // Far enough either way to be forever, near enough that adding it to
+        // nanoTime cannot overflow
+        long limit = Long.MAX_VALUE / 4;
+        try {
+            return Math.max(-limit, Math.min(limit, duration.toNanos()));
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? -limit : limit;
+        }
+    }
+
+    /**
+     * The earlier of two deadlines, either of which may be null.
+     */
+    static Deadline earliest(Deadline a, Deadline b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    public Instant instant() {
+        return instant;
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - nanoTime >= 0;
+    }
+
+    /**
+     * Get the time remaining until this deadline.
+     *
+     * @return The time remaining, or zero if it has passed
+     */
+    public Duration remaining() {
+        long result = nanoTime - System.nanoTime();
+        return result <= 0 ? Duration.ZERO : Duration.ofNanos(result);
+    }
+
+    @Override
+    public int compareTo(Deadline o) {
+        return Long.compare(nanoTime - o.nanoTime, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline(" + instant + ")";
+    }
+}
@@ -0,0 +1,51 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown in place of running a task submitted to a scoped executor whose
+ * deadline passed before it could start. Tasks submitted with
+ * <code>submit()</code> fail with this exception, or are cancelled if the
+ * executor manages its own futures; tasks passed to <code>execute()</code>
+ * are simply not run. Either way, the scope's <code>shedCount()</code> is
+ * incremented.
+ *
+ * @see Deadline
+ * @author Tim Boudreau
+ */
+public final class DeadlineExceededException extends CancellationException {
+
+    private final transient Deadline deadline;
+
+    DeadlineExceededException(Deadline deadline) {
+        super("Deadline passed before the task started: " + deadline);
+        this.deadline = deadline;
+    }
+
+    public Deadline deadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,98 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.function.Supplier;
+
+/**
+ * Shared plumbing for ScopedRecursiveTask and ScopedRecursiveAction. Tracks,
+ * per thread, which scoped fork-join task is computing, so that a subtask
+ * created inside it can reuse its snapshot by reference rather than capturing
+ * a new one, and so that a subtask which is run inline on the same thread
+ * (the common case for join()) does not re-enter the scope at all.
+ *
+ * @author Tim Boudreau
+ */
+final class ForkJoinScoping {
+
+    private static final ThreadLocal<Running> RUNNING = ThreadLocal.withInitial(Running::new);
+
+    private ForkJoinScoping() {
+        throw new AssertionError();
+    }
+
+    static Frame inherit(AbstractScope scope) {
+        Running running = RUNNING.get();
+        if (running.scope == scope && isInstalled(scope, running)) {
+            return running.snapshot;
+        }
+        return scope.tracedSnapshot();
+    }
+
+    static <T> T compute(AbstractScope scope, Frame snapshot, Supplier<T> computation) {
+        Running running = RUNNING.get();
+        try {
+            if (running.scope == scope && running.snapshot == snapshot
+                    && isInstalled(scope, running)) {
+                return computation.get();
+            }
+            return scope.getIn(snapshot, () -> {
+                AbstractScope prevScope = running.scope;
+                Frame prevSnapshot = running.snapshot;
+                Frame prevInstalled = running.installed;
+                running.scope = scope;
+                running.snapshot = snapshot;
+                running.installed = scope.currentFrame();
+                try {
+                    return computation.get();
+                } finally {
+                    running.scope = prevScope;
+                    running.snapshot = prevSnapshot;
+                    running.installed = prevInstalled;
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            snapshot.attachOrigin(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Determine if the frame the running task entered is still the current
+     * one - compared by identity with the live frame rather than a snapshot,
+     * since taking a snapshot would mark the current frames as captured and
+     * keep them from being recycled.
+     */
+    private static boolean isInstalled(AbstractScope scope, Running running) {
+        Frame current = scope.currentFrame();
+        return current != null && current == running.installed;
+    }
+
+    private static final class Running {
+
+        AbstractScope scope;
+        Frame snapshot;
+        Frame installed;
+    }
+}
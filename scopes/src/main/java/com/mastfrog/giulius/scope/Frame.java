@@ -0,0 +1,464 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One entry into a scope. Each call to <code>enter()</code> creates a frame
+ * which points to the frame that was current when it was created, so the
+ * chain from any frame back to the root is everything visible in the scope at
+ * that moment. Since nothing about a frame changes while it is in use,
+ * capturing the scope contents to replay on another thread is just a matter of
+ * holding a reference to the current frame.
+ * <p/>
+ * Each frame also carries an array of <i>slots</i> - one per type bound in the
+ * owning scope - holding the most recently entered object of that type visible
+ * from the frame. These are filled in by the scope when the frame is created,
+ * so looking up a bound type costs the same regardless of how deeply nested
+ * the scope is or how many objects were passed to it.
+ * <p/>
+ * To make a steady-state enter / exit cycle allocation-free, frames created by
+ * the thread-local scopes' <code>enter()</code> are <i>recyclable</i>: on exit,
+ * a frame that nothing ever captured is cleared and parked on the frame below
+ * it (or the thread's outermost spare) for the next entry at that depth to
+ * reuse. A parked frame holds no contents, so a thread which has left a scope
+ * keeps nothing that was in it alive. Capturing a frame - which
+ * <code>snapshot()</code> does to the current frame and everything beneath it
+ * - makes it permanently immutable, so a snapshot handed to another thread
+ * never changes.
+ *
+ * @author Tim Boudreau
+ */
+final class Frame {
+
+    static final Object[] EMPTY = new Object[0];
+    final Object[] contents;
+    /**
+     * The frame searched after this one when looking up an object.
+     */
+    Frame parent;
+    /**
+     * The frame which becomes current again on the entering thread when this
+     * one is exited. Usually the same as the parent, but differs when a
+     * snapshot taken on one thread is installed on another.
+     */
+    Frame restore;
+    int depth;
+    /**
+     * Lookup results for types bound in the scope, indexed by the slot number
+     * the scope assigned to each type. May be shorter than the number of
+     * bound types if more were bound after this frame was created.
+     */
+    Object[] slots;
+    /**
+     * The earliest Deadline entered in this frame or any it is nested in,
+     * filled in along with the slots.
+     */
+    Deadline deadline;
+    /**
+     * The most recently entered CancellationToken visible from this frame,
+     * filled in along with the slots.
+     */
+    CancellationToken token;
+    /**
+     * Memoized results of searching for types which have no slot, including
+     * misses, created on demand if the scope's resolution cache is enabled.
+     * Since a frame's contents never change while it is in use, entries never
+     * go stale - entering the scope again uses a different frame with its own
+     * cache, exiting returns to a frame whose cache is still valid, and
+     * recycling a frame discards its cache.
+     */
+    private volatile Map<Class<?>, Object> resolved;
+    /**
+     * Objects created by the scope's unscoped providers for types bound in
+     * the scope but not entered, keyed by the scoped provider, so they are
+     * created once per entry rather than once per injection.
+     */
+    private volatile Map<Object, Object> provisions;
+    private static final Object MISS = new Object();
+    /**
+     * Where the snapshot this frame represents was taken, if origin tracing
+     * was enabled and this snapshot was sampled.
+     */
+    private final ScopeOrigin origin;
+    private final boolean recyclable;
+    // Only touched by the thread that entered this frame
+    private boolean captured;
+    /**
+     * A cleared frame, last exited on top of this one, for the next entry on
+     * top of this one to reuse.
+     */
+    Frame spare;
+
+    Frame(Object[] contents, Frame parent, Object[] slots) {
+        this(contents, parent, parent, slots);
+    }
+
+    Frame(Object[] contents, Frame parent, Frame restore, Object[] slots) {
+        this.contents = contents == null ? EMPTY : contents;
+        this.parent = parent;
+        this.restore = restore;
+        this.depth = parent == null ? 1 : parent.depth + 1;
+        this.slots = slots;
+        this.origin = null;
+        this.recyclable = false;
+    }
+
+    private Frame(int arity) {
+        this.contents = arity == 0 ? EMPTY : new Object[arity];
+        this.slots = EMPTY;
+        this.origin = null;
+        this.recyclable = true;
+    }
+
+    /**
+     * Reuse a spare frame if it has the right number of contents, or create a
+     * new recyclable one, and point it at its parent. The caller fills in the
+     * contents and then the slots.
+     *
+     * @param spare A spare frame or null
+     * @param arity The number of objects to be entered
+     * @param parent The parent frame, which is also the one to restore
+     * @param slotCount The number of bound types
+     * @return A frame
+     */
+    static Frame recycled(Frame spare, int arity, Frame parent, int slotCount) {
+        // A spare which was captured after it was reused is a snapshot now
+        Frame result = spare != null && !spare.captured
+                && spare.contents.length == arity ? spare : new Frame(arity);
+        result.parent = parent;
+        result.restore = parent;
+        result.depth = parent == null ? 1 : parent.depth + 1;
+        if (result.slots.length != slotCount) {
+            result.slots = slotCount == 0 ? EMPTY : new Object[slotCount];
+        }
+        return result;
+    }
+
+    /**
+     * Mark this frame and everything visible from it as captured, so they are
+     * never recycled.
+     *
+     * @return this
+     */
+    Frame capture() {
+        for (Frame f = this; f != null && !f.captured; f = f.parent) {
+            f.captured = true;
+        }
+        return this;
+    }
+
+    /**
+     * Clear this frame for reuse, if it is recyclable and was never captured.
+     *
+     * @return Whether the frame can be reused
+     */
+    boolean recycle() {
+        if (!recyclable || captured) {
+            return false;
+        }
+        Arrays.fill(contents, null);
+        Arrays.fill(slots, null);
+        parent = null;
+        restore = null;
+        deadline = null;
+        token = null;
+        Map<Class<?>, Object> cache = resolved;
+        if (cache != null) {
+            cache.clear();
+        }
+        Map<Object, Object> provided = provisions;
+        if (provided != null) {
+            provided.clear();
+        }
+        return true;
+    }
+
+    /**
+     * Get the object the passed provider created in this entry or any entry
+     * it is nested in, or have it create one and remember it in this entry.
+     * Frames with no contents of their own, such as those which install a
+     * snapshot on another thread, remember it in the frame they resolve
+     * through, so it is shared with the thread the snapshot came from.
+     *
+     * @param <T> The type
+     * @param key Identifies the provider
+     * @param provider Creates the object
+     * @return An object, or null if the provider returned null
+     */
+    @SuppressWarnings("unchecked")
+    <T> T provision(Object key, Provider<T> provider) {
+        for (Frame f = this; f != null; f = f.parent) {
+            Map<Object, Object> provided = f.provisions;
+            if (provided != null) {
+                Object result = provided.get(key);
+                if (result != null) {
+                    return (T) result;
+                }
+            }
+        }
+        // Not computeIfAbsent() - the provider may well provision other
+        // scoped objects, and ConcurrentHashMap forbids recursive updates
+        T result = provider.get();
+        if (result == null) {
+            return null;
+        }
+        Frame owner = this;
+        while (owner.contents.length == 0 && owner.parent != null) {
+            owner = owner.parent;
+        }
+        Map<Object, Object> provided = owner.provisions;
+        if (provided == null) {
+            synchronized (owner) {
+                provided = owner.provisions;
+                if (provided == null) {
+                    owner.provisions = provided = new ConcurrentHashMap<>(8);
+                }
+            }
+        }
+        Object raced = provided.putIfAbsent(key, result);
+        return raced == null ? result : (T) raced;
+    }
+
+    /**
+     * Create a frame with no contents of its own, which resolves exactly as
+     * the passed snapshot does, and so counts as the same depth.
+     */
+    private Frame(Frame snapshot, Frame restore, ScopeOrigin origin) {
+        this.contents = EMPTY;
+        this.parent = snapshot;
+        this.restore = restore;
+        this.depth = snapshot.depth;
+        this.slots = snapshot.slots;
+        this.deadline = snapshot.deadline;
+        this.token = snapshot.token;
+        this.origin = origin;
+        this.recyclable = false;
+    }
+
+    /**
+     * Create a frame which resolves exactly as the passed snapshot does, but
+     * records where it was captured.
+     *
+     * @param snapshot A snapshot
+     * @param origin Its origin
+     * @return A frame
+     */
+    static Frame traced(Frame snapshot, ScopeOrigin origin) {
+        return new Frame(snapshot, snapshot.restore, origin);
+    }
+
+    ScopeOrigin origin() {
+        for (Frame f = this; f != null; f = f.parent) {
+            if (f.origin != null) {
+                return f.origin;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * If this frame has a recorded origin, attach it to an exception thrown by
+     * code run in it.
+     *
+     * @param thrown The exception
+     */
+    void attachOrigin(Throwable thrown) {
+        ScopeOrigin o = origin();
+        if (o != null && thrown != o) {
+            for (Throwable t : thrown.getSuppressed()) {
+                if (t == o) {
+                    return;
+                }
+            }
+            thrown.addSuppressed(o);
+        }
+    }
+
+    /**
+     * Determine if this frame makes exactly the same objects visible as
+     * another - they are the same frame once frames which add nothing, such as
+     * those created to install a snapshot, are skipped.
+     *
+     * @param other Another frame
+     * @return true if lookups against either frame give the same results
+     */
+    boolean isEquivalentTo(Frame other) {
+        return other != null && (this == other || visible() == other.visible());
+    }
+
+    private Frame visible() {
+        Frame result = this;
+        while (result.contents.length == 0 && result.parent != null) {
+            result = result.parent;
+        }
+        return result;
+    }
+
+    /**
+     * The outermost frame this one was built on - for a typical request, the
+     * frame created when the request entered the scope, which every snapshot
+     * taken while handling it shares.
+     *
+     * @return A frame
+     */
+    Frame root() {
+        Frame result = this;
+        while (result.parent != null) {
+            result = result.parent;
+        }
+        return result;
+    }
+
+    /**
+     * Create a frame which makes the passed snapshot current on a thread,
+     * returning to <code>restore</code> when it is exited, without copying the
+     * snapshot's contents.
+     *
+     * @param snapshot A frame captured on some thread
+     * @param restore The frame current on the thread now, if any
+     * @return A frame
+     */
+    static Frame install(Frame snapshot, Frame restore) {
+        return new Frame(snapshot, restore, null);
+    }
+
+    <T> T get(int slot, Class<T> type) {
+        if (slot >= 0 && slot < slots.length) {
+            return type.cast(LazyContent.resolve(slots[slot]));
+        }
+        return find(type);
+    }
+
+    /**
+     * Look up a type, using and populating the resolution cache for types
+     * which have no slot.
+     *
+     * @param <T> The type
+     * @param slot The slot, or -1
+     * @param type The type
+     * @param hits Incremented on a cache hit
+     * @param misses Incremented on a cache miss
+     * @return An object or null
+     */
+    <T> T getCached(int slot, Class<T> type, LongAdder hits, LongAdder misses) {
+        if (slot >= 0 && slot < slots.length) {
+            return type.cast(LazyContent.resolve(slots[slot]));
+        }
+        Frame owner = this;
+        // A frame with no contents of its own resolves exactly as its parent
+        // does, so share the parent's cache
+        while (owner.contents.length == 0 && owner.parent != null) {
+            owner = owner.parent;
+        }
+        Map<Class<?>, Object> cache = owner.resolved;
+        if (cache == null) {
+            synchronized (owner) {
+                cache = owner.resolved;
+                if (cache == null) {
+                    owner.resolved = cache = new ConcurrentHashMap<>(8);
+                }
+            }
+        }
+        Object result = cache.get(type);
+        if (result != null) {
+            hits.increment();
+            return result == MISS ? null : type.cast(result);
+        }
+        misses.increment();
+        T found = owner.find(type);
+        cache.put(type, found == null ? MISS : found);
+        return found;
+    }
+
+    <T> T find(Class<T> type) {
+        return type.cast(LazyContent.resolve(findEntry(type)));
+    }
+
+    /**
+     * Find the most recently entered object of some type without computing
+     * it if it is a LazyContent.
+     *
+     * @param type A type
+     * @return The object or LazyContent, or null
+     */
+    Object findEntry(Class<?> type) {
+        for (Frame f = this; f != null; f = f.parent) {
+            Object[] curr = f.contents;
+            for (int i = curr.length - 1; i >= 0; i--) {
+                Object o = curr[i];
+                if (o instanceof LazyContent<?>
+                        ? type.isAssignableFrom(((LazyContent<?>) o).type())
+                        : type.isInstance(o)) {
+                    return o;
+                }
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        int result = 0;
+        for (Frame f = this; f != null; f = f.parent) {
+            result += f.contents.length;
+        }
+        return result;
+    }
+
+    /**
+     * Get the contents of this frame and all of its parents, oldest first -
+     * the order they would be in had they all been passed to a single call to
+     * <code>enter()</code>.
+     *
+     * @return An array
+     */
+    Object[] flatten() {
+        if (parent == null) {
+            return recyclable ? contents.clone() : contents;
+        }
+        Object[] result = new Object[size()];
+        int end = result.length;
+        for (Frame f = this; f != null; f = f.parent) {
+            end -= f.contents.length;
+            System.arraycopy(f.contents, 0, result, end, f.contents.length);
+        }
+        return result;
+    }
+
+    List<Object> toList() {
+        return new ArrayList<>(Arrays.asList(flatten()));
+    }
+
+    @Override
+    public String toString() {
+        return "Frame(" + depth + " " + Arrays.asList(flatten()) + ")";
+    }
+}
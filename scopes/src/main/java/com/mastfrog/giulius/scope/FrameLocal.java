@@ -0,0 +1,124 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-thread storage for a scope's current frame. On a ScopedThread this is a
+ * plain array read from a field of the thread; on any other thread it falls
+ * back to a ThreadLocal.
+ * <p/>
+ * Array indices are handed back when a FrameLocal is garbage collected, so a
+ * ScopedThread's array is only as large as the number of scopes alive at once,
+ * not the number ever created. Each FrameLocal also has a unique generation,
+ * which the thread stores alongside the frame, so a frame left behind by a
+ * collected FrameLocal is never seen by a later one given the same index,
+ * and a thread drops such a frame once it notices its index has been freed
+ * or reused.
+ *
+ * @author Tim Boudreau
+ */
+final class FrameLocal {
+
+    private static final ReferenceQueue<FrameLocal> COLLECTED = new ReferenceQueue<>();
+    private static final AtomicInteger GENERATIONS = new AtomicInteger();
+    // Guarded by FrameLocal.class
+    private static final BitSet INDICES = new BitSet();
+    // Keeps the references themselves reachable until they are enqueued
+    private static final Set<Allocation> ALLOCATIONS = new HashSet<>();
+    // The generation of the FrameLocal holding each index, or 0 if it is free;
+    // replaced rather than modified, so threads can read it without locking
+    private static volatile int[] live = new int[0];
+    private final int index;
+    private final int generation = GENERATIONS.incrementAndGet();
+    private final ThreadLocal<Frame> fallback = new ThreadLocal<>();
+
+    FrameLocal() {
+        index = allocate(this);
+    }
+
+    private static synchronized int allocate(FrameLocal local) {
+        int[] generations = Arrays.copyOf(live, INDICES.length() + 1);
+        for (Allocation a; (a = (Allocation) COLLECTED.poll()) != null;) {
+            ALLOCATIONS.remove(a);
+            INDICES.clear(a.index);
+            generations[a.index] = 0;
+        }
+        int result = INDICES.nextClearBit(0);
+        INDICES.set(result);
+        ALLOCATIONS.add(new Allocation(local, result));
+        generations[result] = local.generation;
+        live = generations;
+        return result;
+    }
+
+    /**
+     * Get the generation of the FrameLocal which holds each index, or 0 for
+     * indices which are free. The array is replaced whenever an index is
+     * allocated or freed, and must not be modified.
+     *
+     * @return An array of generations
+     */
+    static int[] liveGenerations() {
+        return live;
+    }
+
+    int index() {
+        return index;
+    }
+
+    Frame get() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof ScopedThread) {
+            return ((ScopedThread) thread).frame(index, generation);
+        }
+        return fallback.get();
+    }
+
+    void set(Frame frame) {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof ScopedThread) {
+            ((ScopedThread) thread).setFrame(index, generation, frame);
+        } else {
+            fallback.set(frame);
+        }
+    }
+
+    private static final class Allocation extends WeakReference<FrameLocal> {
+
+        final int index;
+
+        Allocation(FrameLocal local, int index) {
+            super(local, COLLECTED);
+            this.index = index;
+        }
+    }
+}
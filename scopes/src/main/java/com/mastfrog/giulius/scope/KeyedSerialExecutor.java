@@ -0,0 +1,318 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor which runs the tasks submitted under each key one at a time, in
+ * the order they were submitted, while tasks for different keys run in
+ * parallel - for work which mutates per-session state, without blocking pool
+ * threads on a lock. The key is the object of some type in scope when a task
+ * is submitted, looked up as the scope would look it up to inject it.
+ * <p/>
+ * Each key with work pending has a lock-free queue and a count of pending
+ * tasks; the submitter which takes the count from zero to one hands the key
+ * to a shared pool to drain, so there is never more than one thread working
+ * on a key, and no thread per key. A drainer gives its thread back to the
+ * pool after a batch of tasks, so busy keys cannot starve others, and a
+ * key's queue is discarded as soon as it is empty.
+ * <p/>
+ * Tasks submitted with no object of the key type in scope are serialized
+ * together.
+ *
+ * @author Tim Boudreau
+ */
+final class KeyedSerialExecutor extends ScopedExecutorService {
+
+    private static final Object NO_KEY = new Object();
+    private static final int BATCH = 32;
+    private final AbstractScope scope;
+    private final Class<?> keyType;
+    private final Executor pool;
+    private final ConcurrentHashMap<Object, KeyQueue> queues = new ConcurrentHashMap<>();
+    // Accepted and not yet run or discarded
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile boolean shutdown;
+
+    KeyedSerialExecutor(AbstractScope scope, Class<?> keyType, Executor pool) {
+        this.scope = scope;
+        this.keyType = keyType;
+        this.pool = pool;
+    }
+
+    @Override
+    AbstractScope scope() {
+        return scope;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Shut down: " + this);
+        }
+        Frame snapshot = scope.inScope() ? scope.tracedSnapshot() : null;
+        Object key = snapshot == null ? null : snapshot.get(scope.slotIfBound(keyType), keyType);
+        Task task = new Task(snapshot, command);
+        pending.incrementAndGet();
+        if (shutdown) {
+            // Lost a race with shutdown()
+            finished();
+            throw new RejectedExecutionException("Shut down: " + this);
+        }
+        if (key == null) {
+            key = NO_KEY;
+        }
+        for (;;) {
+            KeyQueue queue = queues.get(key);
+            if (queue == null) {
+                KeyQueue nue = new KeyQueue(key);
+                queue = queues.putIfAbsent(key, nue);
+                if (queue == null) {
+                    queue = nue;
+                }
+            }
+            // Add before counting, so a drainer which sees a positive count
+            // always finds a task
+            queue.tasks.add(task);
+            int previous = queue.acquire();
+            if (previous < 0) {
+                // Drained and retired since we looked it up; a drainer only
+                // retires a queue it found empty, so ours is still there
+                queue.tasks.remove(task);
+                queues.remove(key, queue);
+                continue;
+            }
+            if (previous == 0) {
+                queue.schedule();
+            }
+            return;
+        }
+    }
+
+    private void finished() {
+        if (pending.decrementAndGet() == 0 && shutdown) {
+            terminated.countDown();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (pending.get() == 0) {
+            terminated.countDown();
+        }
+    }
+
+    /**
+     * Shut down, returning tasks which have not started. Since the threads
+     * belong to the shared pool, running tasks are not interrupted.
+     *
+     * @return The tasks which will not be run
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> result = new ArrayList<>();
+        for (KeyQueue queue : queues.values()) {
+            for (Task task : queue.tasks) {
+                // Drainers skip tasks claimed here
+                if (task.compareAndSet(false, true)) {
+                    result.add(task.task);
+                }
+            }
+        }
+        return result.isEmpty() ? Collections.emptyList() : result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + keyType.getSimpleName()
+                + " keys " + queues.size() + " pending " + pending.get() + ")";
+    }
+
+    /**
+     * A task, which is true once it has been claimed to be run or returned
+     * by <code>shutdownNow()</code>.
+     */
+    private static final class Task extends AtomicBoolean {
+
+        final Frame snapshot;
+        final Runnable task;
+
+        Task(Frame snapshot, Runnable task) {
+            this.snapshot = snapshot;
+            this.task = task;
+        }
+    }
+
+    private final class KeyQueue implements Runnable {
+
+        private final Object key;
+        final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<>();
+        // Tasks added and not yet run; -1 once retired
+        private final AtomicInteger count = new AtomicInteger();
+
+        KeyQueue(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * Count a task just added, unless this queue has been retired.
+         *
+         * @return The previous count, or -1 if retired
+         */
+        int acquire() {
+            for (;;) {
+                int current = count.get();
+                if (current < 0) {
+                    return -1;
+                } else if (count.compareAndSet(current, current + 1)) {
+                    return current;
+                }
+            }
+        }
+
+        /**
+         * Hand this queue to the pool to drain. If the pool rejects it, the
+         * tasks waiting for the key are discarded rather than run on the
+         * calling thread, which is usually in the scope already.
+         *
+         * @throws RejectedExecutionException if the pool rejected it
+         */
+        void schedule() {
+            try {
+                pool.execute(this);
+            } catch (RejectedExecutionException e) {
+                discard();
+                throw e;
+            }
+        }
+
+        /**
+         * Take the place of a drainer which cannot run, cancelling tasks which
+         * are futures so nothing waits on them forever.
+         */
+        private void discard() {
+            for (;;) {
+                Task task = tasks.poll();
+                if (task.compareAndSet(false, true) && task.task instanceof Future<?>) {
+                    ((Future<?>) task.task).cancel(false);
+                }
+                if (taken()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Account for a task taken off the queue, retiring the queue if it
+         * was the last - unless a submitter has added a task it has not
+         * counted yet, and will find the count at zero and schedule us again,
+         * or has just taken the count from zero, in which case it already has.
+         *
+         * @return true if the caller has no more tasks to take
+         */
+        private boolean taken() {
+            finished();
+            if (count.decrementAndGet() != 0) {
+                return false;
+            }
+            if (tasks.isEmpty() && count.compareAndSet(0, -1)) {
+                queues.remove(key, this);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            Frame entered = null;
+            boolean reschedule = false;
+            try {
+                for (int i = 0;; i++) {
+                    Task task = tasks.poll();
+                    if (task.compareAndSet(false, true)) {
+                        if (entered == null || !entered.isEquivalentTo(task.snapshot)) {
+                            if (entered != null) {
+                                scope.exit();
+                                entered = null;
+                            }
+                            // Null if submitted from outside the scope
+                            if (task.snapshot != null) {
+                                scope.enterSnapshot(task.snapshot);
+                                entered = task.snapshot;
+                            }
+                        }
+                        scope.runTask(task.snapshot, task.task);
+                    }
+                    if (taken()) {
+                        return;
+                    }
+                    if (i + 1 == BATCH) {
+                        reschedule = true;
+                        return;
+                    }
+                }
+            } finally {
+                if (entered != null) {
+                    scope.exit();
+                }
+                if (reschedule) {
+                    try {
+                        schedule();
+                    } catch (RejectedExecutionException e) {
+                        // Discarded; there is no submitter to tell
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.function.Supplier;
+
+/**
+ * Marker for an object which should be in scope, but need only be created if
+ * something actually asks for it - pass one to <code>enter()</code> or
+ * <code>run()</code> in place of the object itself. The scope treats it as an
+ * instance of the type passed here; the supplier is called the first time
+ * that type (or a supertype bound in the scope) is looked up, and the result
+ * is kept for the rest of the entry. Snapshots of the entry share the same
+ * LazyContent, so a wrapped task sees the value if it was already computed,
+ * and computes it at most once for everyone if not.
+ * <p/>
+ * The supplier may be called on whatever thread first needs the value, and is
+ * called at most once unless it throws, in which case the next lookup tries
+ * again. A null result is remembered like any other.
+ *
+ * @author Tim Boudreau
+ */
+public final class LazyContent<T> {
+
+    private static final Object UNSET = new Object();
+    private final Class<T> type;
+    private Supplier<? extends T> supplier;
+    private volatile Object value = UNSET;
+
+    private LazyContent(Class<T> type, Supplier<? extends T> supplier) {
+        if (type == null) {
+            throw new IllegalArgumentException("Null type");
+        }
+        if (supplier == null) {
+            throw new IllegalArgumentException("Null supplier");
+        }
+        this.type = type;
+        this.supplier = supplier;
+    }
+
+    /**
+     * Create a lazily computed scope entry.
+     *
+     * @param <T> The type
+     * @param type The type it should be injectable as
+     * @param supplier Computes the object
+     * @return A LazyContent
+     */
+    public static <T> LazyContent<T> of(Class<T> type, Supplier<? extends T> supplier) {
+        return new LazyContent<>(type, supplier);
+    }
+
+    public Class<T> type() {
+        return type;
+    }
+
+    /**
+     * Determine if the value has been computed yet.
+     *
+     * @return True if it has
+     */
+    public boolean isComputed() {
+        return value != UNSET;
+    }
+
+    T get() {
+        Object result = value;
+        if (result == UNSET) {
+            synchronized (this) {
+                result = value;
+                if (result == UNSET) {
+                    value = result = supplier.get();
+                    // Let go of whatever the supplier references
+                    supplier = null;
+                }
+            }
+        }
+        return type.cast(result);
+    }
+
+    static Object resolve(Object o) {
+        return o instanceof LazyContent<?> ? ((LazyContent<?>) o).get() : o;
+    }
+
+    static Class<?> typeOf(Object o) {
+        return o instanceof LazyContent<?> ? ((LazyContent<?>) o).type : o.getClass();
+    }
+
+    @Override
+    public String toString() {
+        Object v = value;
+        return "LazyContent<" + type.getName() + ">("
+                + (v == UNSET ? "not computed" : String.valueOf(v)) + ")";
+    }
+}
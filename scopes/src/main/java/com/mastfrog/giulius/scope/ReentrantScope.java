@@ -26,8 +26,8 @@ package com.mastfrog.giulius.scope;
 import com.google.inject.Provider;
 import com.mastfrog.function.misc.QuietAutoClosable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 /**
@@ -45,7 +45,10 @@ import java.util.logging.Level;
  */
 public class ReentrantScope extends AbstractScope {
 
-    private final ThreadLocal<List<Object[]>> lists = new ThreadLocal<>();
+    private final FrameLocal frames = new FrameLocal();
+    // Recycled outermost frames; nested ones are parked on their parent.
+    // A parked frame has been cleared, so it holds no scope contents
+    private final FrameLocal spares = new FrameLocal();
 
     public ReentrantScope() {
         super();
@@ -64,16 +67,6 @@ public class ReentrantScope extends AbstractScope {
         super(injectionInfoProvider);
     }
 
-    Object[] includeStackTrace(Object... scopeContents) {
-        if (this.includeStackTraces) {
-            Object[] nue = new Object[scopeContents.length + 1];
-            System.arraycopy(scopeContents, 0, nue, 0, scopeContents.length);
-            nue[nue.length - 1] = new Throwable();
-            return nue;
-        }
-        return scopeContents;
-    }
-
     private final QuietAutoClosable qac = new NTAC(this);
 
     private static final class NTAC implements QuietAutoClosable {
@@ -92,60 +85,174 @@ public class ReentrantScope extends AbstractScope {
     }
 
     public QuietAutoClosable enter(Object... o) {
-        List<Object[]> context = lists.get();
-        if (context == null) {
-            context = new ArrayList<>(20);
-            lists.set(context);
+        Frame current = frames.get();
+        return push(recycledFrame(spare(current), current, o));
+    }
+
+    @Override
+    public QuietAutoClosable enter(Object a) {
+        Frame current = frames.get();
+        return push(recycledFrame(spare(current), current, a));
+    }
+
+    @Override
+    public QuietAutoClosable enter(Object a, Object b) {
+        Frame current = frames.get();
+        return push(recycledFrame(spare(current), current, a, b));
+    }
+
+    @Override
+    public QuietAutoClosable enter(Object a, Object b, Object c) {
+        Frame current = frames.get();
+        return push(recycledFrame(spare(current), current, a, b, c));
+    }
+
+    /**
+     * Enter the scope with an object which is only created if something
+     * looks it up, and then only once for this entry and any snapshots of
+     * it.
+     *
+     * @see LazyContent
+     * @param <T> The type
+     * @param type The type the object should be injectable as
+     * @param supplier Creates the object
+     * @return An AutoClosable which exits the scope
+     */
+    public <T> QuietAutoClosable enterLazy(Class<T> type, Supplier<? extends T> supplier) {
+        return enter(LazyContent.of(type, supplier));
+    }
+
+    /**
+     * Enter the scope with a cancellation token, which everything wrapped or
+     * submitted to a scoped executor from within this entry will carry, so
+     * it can be abandoned if this entry's work is. If another token is
+     * already in scope, cancelling that one cancels this one too.
+     *
+     * @param token A token
+     * @param onClose What closing the returned AutoClosable should do to
+     * work still queued or running
+     * @param scopeContents Other objects to enter the scope with
+     * @return An AutoClosable which applies the policy and exits the scope
+     */
+    public QuietAutoClosable enterCancellable(CancellationToken token, CancelPolicy onClose,
+            Object... scopeContents) {
+        Frame current = frames.get();
+        CancellationToken parent = current == null ? null : current.token;
+        if (parent != null && !parent.adopt(token)) {
+            parent = null;
+        }
+        Object[] contents = new Object[scopeContents.length + 1];
+        contents[0] = token;
+        System.arraycopy(scopeContents, 0, contents, 1, scopeContents.length);
+        enter(contents);
+        if (onClose == CancelPolicy.NONE && parent == null) {
+            return qac;
+        }
+        CancellationToken adoptedBy = parent;
+        return () -> {
+            try {
+                if (onClose != CancelPolicy.NONE) {
+                    token.cancel(onClose == CancelPolicy.INTERRUPT_RUNNING);
+                }
+            } finally {
+                if (adoptedBy != null) {
+                    adoptedBy.release(token);
+                }
+                exit();
+            }
+        };
+    }
+
+    private Frame spare(Frame current) {
+        return current == null ? spares.get() : current.spare;
+    }
+
+    private QuietAutoClosable push(Frame frame) {
+        frames.set(frame);
+        notifyEnter(frame);
+        return qac;
+    }
+
+    @Override
+    Frame snapshot() {
+        Frame result = frames.get();
+        return result == null ? newFrame(Frame.EMPTY, null) : result.capture();
+    }
+
+    @Override
+    Frame currentFrame() {
+        return frames.get();
+    }
+
+    @Override
+    boolean isCurrent(Frame snapshot) {
+        Frame current = frames.get();
+        return current != null && current.isEquivalentTo(snapshot);
+    }
+
+    @Override
+    QuietAutoClosable enterSnapshot(Frame snapshot) {
+        Frame current = frames.get();
+        Frame frame;
+        if (current == null) {
+            // Nothing to preserve - the snapshot can be used as-is
+            frame = Frame.install(snapshot, null);
+        } else {
+            // Already in scope on this thread;  objects from the snapshot
+            // take precedence, but anything already here remains visible
+            frame = newFrame(snapshot.flatten(), current);
         }
-        context.add(o);
+        frames.set(frame);
+        notifyEnter(frame);
         return qac;
     }
 
     protected List<Object> contents() {
-        List<Object> result = new ArrayList<>(40);
-        List<Object[]> toSearch = lists.get();
-        if (toSearch != null && !toSearch.isEmpty()) {
-            for (Object[] l : toSearch) {
-                result.addAll(Arrays.asList(l));
-            }
-        }
-        return result;
+        Frame frame = frames.get();
+        return frame == null ? new ArrayList<>(0) : frame.toList();
     }
 
     @Override
     public void exit() {
-        List<Object[]> l = lists.get();
-        assert l != null;
-        l.remove(l.size() - 1);
+        Frame frame = frames.get();
+        assert frame != null;
+        Frame restore = frame.restore;
         if (logger.isLoggable(Level.FINEST)) {
             logger.log(Level.FINEST, "Exit {0} entry count {1}",
-                    new Object[]{getClass().getSimpleName(), l.size()});
+                    new Object[]{getClass().getSimpleName(), restore == null ? 0 : restore.depth});
         }
-        if (l.isEmpty()) {
-            lists.remove();
+        // Not remove() - the next outermost entry would have to allocate a
+        // new ThreadLocal entry
+        frames.set(restore);
+        notifyExit(frame);
+        if (frame.recycle()) {
+            if (restore == null) {
+                spares.set(frame);
+            } else {
+                restore.spare = frame;
+            }
+        } else if (restore == null) {
+            // A spare which was reused and then captured is a snapshot now,
+            // and must not be kept for the thread
+            if (spares.get() == frame) {
+                spares.set(null);
+            }
+        } else if (restore.spare == frame) {
+            restore.spare = null;
         }
     }
 
     public boolean inScope() {
-        List<?> l = this.lists.get();
-        return l != null && !l.isEmpty();
+        return frames.get() != null;
     }
 
     @Override
     protected <T> T get(Class<T> type) {
-        List<Object[]> toSearch = lists.get();
-        if (toSearch != null && !toSearch.isEmpty()) {
-            int max = toSearch.size();
-            for (int i = max - 1; i >= 0; i--) {
-                Object[] curr = toSearch.get(i);
-                for (int j = curr.length - 1; j >= 0; j--) {
-                    Object o = curr[j];
-                    if (type.isInstance(o)) {
-                        return type.cast(o);
-                    }
-                }
-            }
-        }
-        return null;
+        return lookup(frames.get(), slotIfBound(type), type);
+    }
+
+    @Override
+    <T> T get(int slot, Class<T> type) {
+        return lookup(frames.get(), slot, type);
     }
 }
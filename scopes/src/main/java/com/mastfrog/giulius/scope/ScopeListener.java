@@ -0,0 +1,93 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+/**
+ * Receives notifications of activity in an AbstractScope, for monitoring. All
+ * methods are called synchronously on the thread doing the work, so
+ * implementations must be thread-safe and should do as little as possible.
+ * When no listener is registered, the scope does not compute anything it would
+ * pass to one.
+ * <p/>
+ * See <code>ScopeMetrics</code> for an implementation which aggregates
+ * counters that can be polled.
+ *
+ * @see AbstractScope#addScopeListener(ScopeListener)
+ * @author Tim Boudreau
+ */
+public interface ScopeListener {
+
+    /**
+     * Called when the scope is entered, or a snapshot is re-entered.
+     *
+     * @param scope The scope
+     * @param depth The number of frames now visible on the calling thread
+     */
+    default void onEnter(AbstractScope scope, int depth) {
+        // do nothing
+    }
+
+    /**
+     * Called when the scope is exited.
+     *
+     * @param scope The scope
+     * @param depth The number of frames that were visible before exiting
+     */
+    default void onExit(AbstractScope scope, int depth) {
+        // do nothing
+    }
+
+    /**
+     * Called when a provider for a type bound in the scope looks for an
+     * instance of that type.
+     *
+     * @param scope The scope
+     * @param type The type
+     * @param hit If false, nothing was found and the provider fell back to
+     * returning null, throwing an exception, or the unscoped provider
+     */
+    default void onLookup(AbstractScope scope, Class<?> type, boolean hit) {
+        // do nothing
+    }
+
+    /**
+     * Called when one of the <code>wrap()</code> methods creates a wrapper.
+     *
+     * @param scope The scope
+     */
+    default void onWrap(AbstractScope scope) {
+        // do nothing
+    }
+
+    /**
+     * Called when the contents of the scope are captured to be re-entered
+     * later, by a wrapper, <code>join()</code> or a scoped executor.
+     *
+     * @param scope The scope
+     * @param size The number of objects captured
+     */
+    default void onSnapshot(AbstractScope scope, int size) {
+        // do nothing
+    }
+}
@@ -0,0 +1,188 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ScopeListener which aggregates counts of what happens in one or more scopes,
+ * using striped counters so recording does not contend across threads. Poll it
+ * from whatever exports your metrics.
+ *
+ * <pre>
+ * ScopeMetrics metrics = new ScopeMetrics();
+ * scope.addScopeListener(metrics);
+ * ...
+ * long misses = metrics.misses(FooRequest.class);
+ * </pre>
+ *
+ * @author Tim Boudreau
+ */
+public final class ScopeMetrics implements ScopeListener {
+
+    private final LongAdder enters = new LongAdder();
+    private final LongAdder exits = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder wraps = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder snapshotEntries = new LongAdder();
+    private final LongAccumulator maxSnapshotSize = new LongAccumulator(Math::max, 0);
+    private final Map<Class<?>, LookupCounts> lookups = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEnter(AbstractScope scope, int depth) {
+        enters.increment();
+        maxDepth.accumulate(depth);
+    }
+
+    @Override
+    public void onExit(AbstractScope scope, int depth) {
+        exits.increment();
+    }
+
+    @Override
+    public void onLookup(AbstractScope scope, Class<?> type, boolean hit) {
+        LookupCounts counts = lookups.get(type);
+        if (counts == null) {
+            counts = lookups.computeIfAbsent(type, t -> new LookupCounts());
+        }
+        (hit ? counts.hits : counts.misses).increment();
+    }
+
+    @Override
+    public void onWrap(AbstractScope scope) {
+        wraps.increment();
+    }
+
+    @Override
+    public void onSnapshot(AbstractScope scope, int size) {
+        snapshots.increment();
+        snapshotEntries.add(size);
+        maxSnapshotSize.accumulate(size);
+    }
+
+    public long enterCount() {
+        return enters.sum();
+    }
+
+    public long exitCount() {
+        return exits.sum();
+    }
+
+    /**
+     * Get the deepest nesting of scope entries seen on any thread.
+     *
+     * @return The maximum depth
+     */
+    public long maxDepth() {
+        return maxDepth.get();
+    }
+
+    public long wrapCount() {
+        return wraps.sum();
+    }
+
+    public long snapshotCount() {
+        return snapshots.sum();
+    }
+
+    /**
+     * Get the total number of objects captured by all snapshots, for
+     * computing the average snapshot size.
+     *
+     * @return The total
+     */
+    public long snapshotEntryCount() {
+        return snapshotEntries.sum();
+    }
+
+    public long maxSnapshotSize() {
+        return maxSnapshotSize.get();
+    }
+
+    public double averageSnapshotSize() {
+        long count = snapshots.sum();
+        return count == 0 ? 0 : (double) snapshotEntries.sum() / count;
+    }
+
+    public long hits(Class<?> type) {
+        LookupCounts counts = lookups.get(type);
+        return counts == null ? 0 : counts.hits.sum();
+    }
+
+    public long misses(Class<?> type) {
+        LookupCounts counts = lookups.get(type);
+        return counts == null ? 0 : counts.misses.sum();
+    }
+
+    public Map<String, Long> hitsByType() {
+        return byType(true);
+    }
+
+    public Map<String, Long> missesByType() {
+        return byType(false);
+    }
+
+    private Map<String, Long> byType(boolean hits) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<Class<?>, LookupCounts> e : lookups.entrySet()) {
+            result.put(e.getKey().getName(), (hits ? e.getValue().hits : e.getValue().misses).sum());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Reset all counters to zero.
+     */
+    public void reset() {
+        enters.reset();
+        exits.reset();
+        maxDepth.reset();
+        wraps.reset();
+        snapshots.reset();
+        snapshotEntries.reset();
+        maxSnapshotSize.reset();
+        lookups.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ScopeMetrics(enters " + enterCount() + " exits " + exitCount()
+                + " maxDepth " + maxDepth() + " wraps " + wrapCount()
+                + " snapshots " + snapshotCount() + " avgSnapshot "
+                + averageSnapshotSize() + " maxSnapshot " + maxSnapshotSize()
+                + " hits " + hitsByType() + " misses " + missesByType() + ")";
+    }
+
+    private static final class LookupCounts {
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+}
@@ -0,0 +1,162 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records where a snapshot of a scope's contents was taken - the code that
+ * called <code>wrap()</code> or submitted work to a scoped executor - so that
+ * failures in work dispatched to another thread can be traced back to where
+ * the work came from. Attached as a suppressed exception to anything thrown by
+ * wrapped work, and as the cause of the exception thrown when something is
+ * missing from the scope.
+ * <p/>
+ * Only created when origin tracing is enabled on the scope, and then only for
+ * a sample of snapshots.
+ *
+ * @author Tim Boudreau
+ */
+final class ScopeOrigin extends Exception {
+
+    private static final String PACKAGE = ScopeOrigin.class.getPackage().getName();
+    private static final URL LOCATION = location(ScopeOrigin.class);
+
+    private final String threadName;
+
+    ScopeOrigin(StackTraceElement[] stack) {
+        // Skip the expensive fillInStackTrace() - we supply our own
+        super(null, null, false, true);
+        threadName = Thread.currentThread().getName();
+        setStackTrace(stack);
+    }
+
+    String threadName() {
+        return threadName;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Scope snapshot taken on " + threadName;
+    }
+
+    /**
+     * Sampling configuration; immutable so the rate and depth can be changed
+     * together with a single volatile write.
+     */
+    static final class Tracing {
+
+        final int sampleEvery;
+        final int maxFrames;
+
+        Tracing(int sampleEvery, int maxFrames) {
+            this.sampleEvery = sampleEvery;
+            this.maxFrames = maxFrames;
+        }
+
+        ScopeOrigin sample() {
+            if (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+                return null;
+            }
+            return new ScopeOrigin(capture(maxFrames));
+        }
+    }
+
+    static StackTraceElement[] capture(int maxFrames) {
+        try {
+            return Walker.capture(maxFrames);
+        } catch (LinkageError err) {
+            // JDK 8 - no StackWalker
+            return fromThrowable(maxFrames);
+        }
+    }
+
+    private static boolean isInternal(String className) {
+        return className.startsWith(PACKAGE) && className.lastIndexOf('.') == PACKAGE.length();
+    }
+
+    private static boolean isInternal(StackTraceElement el) {
+        if (!isInternal(el.getClassName())) {
+            return false;
+        }
+        try {
+            return isInternal(Class.forName(el.getClassName(), false, ScopeOrigin.class.getClassLoader()));
+        } catch (ClassNotFoundException ex) {
+            return true;
+        }
+    }
+
+    private static boolean isInternal(Class<?> type) {
+        // Compare code sources so that code in the same package in another
+        // jar (such as tests) is not mistaken for our own
+        return isInternal(type.getName()) && Objects.equals(LOCATION, location(type));
+    }
+
+    private static URL location(Class<?> type) {
+        try {
+            CodeSource src = type.getProtectionDomain().getCodeSource();
+            return src == null ? null : src.getLocation();
+        } catch (SecurityException ex) {
+            return null;
+        }
+    }
+
+    private static StackTraceElement[] fromThrowable(int maxFrames) {
+        StackTraceElement[] all = new Throwable().getStackTrace();
+        List<StackTraceElement> result = new ArrayList<>(maxFrames);
+        for (StackTraceElement el : all) {
+            if (result.isEmpty() && isInternal(el)) {
+                continue;
+            }
+            result.add(el);
+            if (result.size() == maxFrames) {
+                break;
+            }
+        }
+        return result.toArray(new StackTraceElement[result.size()]);
+    }
+
+    /**
+     * Isolates the use of StackWalker so it is only linked on JDKs which have
+     * it.
+     */
+    private static final class Walker {
+
+        private static final StackWalker WALKER
+                = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+        static StackTraceElement[] capture(int maxFrames) {
+            return WALKER.walk(frames -> frames
+                    .dropWhile(frame -> isInternal(frame.getDeclaringClass()))
+                    .limit(maxFrames)
+                    .map(StackWalker.StackFrame::toStackTraceElement)
+                    .toArray(StackTraceElement[]::new));
+        }
+    }
+}
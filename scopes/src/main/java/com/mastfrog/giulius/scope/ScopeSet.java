@@ -0,0 +1,466 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A group of scopes which are used together - say, request, session and
+ * tenant scopes - whose contents should all follow work to other threads.
+ * Rather than nesting <code>wrap()</code> calls or thread pool wrappers once
+ * per scope, which costs a snapshot, a wrapper object and a nested call per
+ * scope for each task, a ScopeSet captures every member's snapshot in one
+ * object, and enters and exits them in a single loop.
+ * <pre>
+ * ScopeSet scopes = new ScopeSet(requestScope, sessionScope, tenantScope);
+ * ExecutorService exe = scopes.wrapThreadPool(Executors.newFixedThreadPool(8));
+ * </pre>
+ * Members are entered in the order passed to the constructor, and exited in
+ * reverse. A member which is not in scope when a snapshot is taken is not
+ * entered at all when it is run. Deadlines and cancellation tokens in any
+ * member's snapshot apply as they do for a single scope: wrapped work does
+ * not start once its token is cancelled, and a wrapped thread pool sheds
+ * tasks whose deadline has passed.
+ *
+ * @author Tim Boudreau
+ */
+public final class ScopeSet {
+
+    private final AbstractScope[] scopes;
+
+    public ScopeSet(AbstractScope... scopes) {
+        if (scopes.length == 0) {
+            throw new IllegalArgumentException("No scopes");
+        } else if (scopes.length > Long.SIZE) {
+            // Which members a snapshot entered is tracked as bits in a long
+            throw new IllegalArgumentException("Too many scopes: " + scopes.length);
+        }
+        for (int i = 0; i < scopes.length; i++) {
+            for (int j = i + 1; j < scopes.length; j++) {
+                if (scopes[i] == scopes[j]) {
+                    throw new IllegalArgumentException("Duplicate scope " + scopes[i]);
+                }
+            }
+        }
+        this.scopes = scopes.clone();
+    }
+
+    /**
+     * Determine if any member of this set is in scope on the calling thread.
+     *
+     * @return true if there is something to propagate
+     */
+    public boolean inScope() {
+        for (AbstractScope scope : scopes) {
+            if (scope.inScope()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Capture the contents of every member scope which is in scope.
+     *
+     * @return A snapshot, or null if none is
+     */
+    Snapshot snapshot() {
+        Frame[] frames = null;
+        for (int i = 0; i < scopes.length; i++) {
+            AbstractScope scope = scopes[i];
+            if (scope.inScope()) {
+                if (frames == null) {
+                    frames = new Frame[scopes.length];
+                }
+                scope.notifyWrap();
+                frames[i] = scope.tracedSnapshot();
+            }
+        }
+        return frames == null ? null : new Snapshot(frames);
+    }
+
+    /**
+     * Wrap a runnable to enter every member scope before it is run.
+     *
+     * @param runnable A runnable
+     * @return A wrapper, or the original if nothing is in scope
+     */
+    public Runnable wrap(Runnable runnable) {
+        if (runnable instanceof WrapRunnable && ((WrapRunnable) runnable).owner() == this) {
+            return runnable;
+        }
+        Snapshot snapshot = snapshot();
+        return snapshot == null ? runnable : new WrapRunnable(snapshot, runnable,
+                AbstractScope.WrapRunnable.RUN_ALWAYS);
+    }
+
+    /**
+     * Wrap a runnable submitted to a wrapped thread pool, so that it is shed
+     * if a member's deadline has passed or its token has been cancelled when
+     * it is about to run.
+     *
+     * @param runnable A runnable
+     * @param failFast If true, throw the shed failure so the future the
+     * delegate created for it fails; if false, simply do not run it
+     * @return A wrapper
+     */
+    Runnable wrapTask(Runnable runnable, boolean failFast) {
+        if (runnable instanceof WrapRunnable && ((WrapRunnable) runnable).owner() == this) {
+            return runnable;
+        }
+        Snapshot snapshot = snapshot();
+        return snapshot == null ? runnable : new WrapRunnable(snapshot, runnable,
+                failFast ? AbstractScope.WrapRunnable.FAIL_IF_EXPIRED
+                        : AbstractScope.WrapRunnable.DROP_IF_EXPIRED);
+    }
+
+    /**
+     * Wrap a callable submitted to a wrapped thread pool, so that it fails
+     * rather than running if a member's deadline has passed or its token has
+     * been cancelled when it is about to run.
+     *
+     * @param <T> The return type
+     * @param callable A callable
+     * @return A wrapper
+     */
+    <T> Callable<T> wrapTask(Callable<T> callable) {
+        Snapshot snapshot = snapshot();
+        if (snapshot == null) {
+            return callable;
+        }
+        return () -> {
+            Frame shed = snapshot.shed(callable);
+            if (shed != null) {
+                throw AbstractScope.shedFailure(shed);
+            }
+            return snapshot.call(callable);
+        };
+    }
+
+    /**
+     * Hand a task, already wrapped, to an executor the way <code>submit()</code>
+     * would, so that cancelling any member's token cancels the returned future
+     * at once if the task has not started yet.
+     *
+     * @param <T> The return type
+     * @param executor The executor
+     * @param callable The task
+     * @return A future
+     */
+    <T> Future<T> submitTo(Executor executor, Callable<T> callable) {
+        CancellationToken[] tokens = new CancellationToken[scopes.length];
+        int count = 0;
+        for (AbstractScope scope : scopes) {
+            Frame current = scope.currentFrame();
+            if (current != null && current.token != null) {
+                tokens[count++] = current.token;
+            }
+        }
+        return CancellationToken.submit(executor, callable, Arrays.copyOf(tokens, count));
+    }
+
+    /**
+     * Wrap a callable to enter every member scope before it is run.
+     *
+     * @param <T> The return type
+     * @param callable A callable
+     * @return A wrapper, or the original if nothing is in scope
+     */
+    public <T> Callable<T> wrap(Callable<T> callable) {
+        Snapshot snapshot = snapshot();
+        return snapshot == null ? callable : () -> snapshot.call(callable);
+    }
+
+    /**
+     * Wrap a supplier to enter every member scope when called.
+     *
+     * @param <T> The type
+     * @param supplier A supplier
+     * @return A wrapper, or the original if nothing is in scope
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<T> wrap(Supplier<? extends T> supplier) {
+        Snapshot snapshot = snapshot();
+        return snapshot == null ? (Supplier<T>) supplier : () -> snapshot.get(supplier);
+    }
+
+    /**
+     * Wrap a consumer to enter every member scope when called.
+     *
+     * @param <T> The argument type
+     * @param consumer A consumer
+     * @return A wrapper, or the original if nothing is in scope
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Consumer<T> wrap(Consumer<? super T> consumer) {
+        Snapshot snapshot = snapshot();
+        return snapshot == null ? (Consumer<T>) consumer
+                : t -> snapshot.run(() -> consumer.accept(t));
+    }
+
+    /**
+     * Wrap a thread pool so that everything submitted to it runs with the
+     * contents of every member scope as of when it was submitted. Wrapping a
+     * pool this set already wrapped returns it as-is.
+     *
+     * @param service An executor service
+     * @return A wrapper
+     */
+    public ExecutorService wrapThreadPool(ExecutorService service) {
+        if (service instanceof ScopeSetThreadPool && ((ScopeSetThreadPool) service).scopes == this) {
+            return service;
+        }
+        if (service instanceof ScheduledExecutorService) {
+            return new ScopeSetThreadPool.Scheduled(this, (ScheduledExecutorService) service);
+        }
+        return new ScopeSetThreadPool(this, service);
+    }
+
+    /**
+     * Wrap a scheduled thread pool so that everything submitted to it,
+     * including delayed and periodic tasks, runs with the contents of every
+     * member scope as of when it was submitted.
+     *
+     * @param service A scheduled executor service
+     * @return A wrapper
+     */
+    public ScheduledExecutorService wrapThreadPool(ScheduledExecutorService service) {
+        return (ScheduledExecutorService) wrapThreadPool((ExecutorService) service);
+    }
+
+    @Override
+    public String toString() {
+        return "ScopeSet" + Arrays.toString(scopes);
+    }
+
+    /**
+     * The snapshots of each member scope, null for those which were not in
+     * scope.
+     */
+    final class Snapshot {
+
+        private final Frame[] frames;
+        // Whether any frame carries a token, so the common case need not
+        // look for them
+        private final boolean cancellable;
+
+        Snapshot(Frame[] frames) {
+            this.frames = frames;
+            boolean tokens = false;
+            for (Frame frame : frames) {
+                tokens |= frame != null && frame.token != null;
+            }
+            cancellable = tokens;
+        }
+
+        ScopeSet owner() {
+            return ScopeSet.this;
+        }
+
+        /**
+         * Enter every member which needs entering, recording which ones were
+         * entered as bits, so they can be exited. If entering one fails, any
+         * already entered are exited again.
+         */
+        private long enter() {
+            long entered = 0;
+            try {
+                for (int i = 0; i < frames.length; i++) {
+                    Frame frame = frames[i];
+                    if (frame != null && !scopes[i].isCurrent(frame)) {
+                        scopes[i].enterSnapshot(frame);
+                        entered |= 1L << i;
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                exit(entered);
+                throw e;
+            }
+            return entered;
+        }
+
+        private void exit(long entered) {
+            for (int i = frames.length - 1; i >= 0; i--) {
+                if ((entered & (1L << i)) != 0) {
+                    scopes[i].exit();
+                }
+            }
+        }
+
+        /**
+         * Determine if a task should be shed because a member's deadline has
+         * passed or its token was cancelled, checking the innermost member
+         * first.
+         *
+         * @return The frame it should be shed for, or null
+         */
+        Frame shed(Object task) {
+            for (int i = frames.length - 1; i >= 0; i--) {
+                Frame frame = frames[i];
+                if (frame != null && scopes[i].shed(frame, task)) {
+                    return frame;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * As runIn() does for a single scope, register the calling thread
+         * with every token in the snapshot, so cancelling one can interrupt
+         * it, failing if any is already cancelled.
+         */
+        private CancellationToken.Running[] begin() {
+            if (!cancellable) {
+                return null;
+            }
+            CancellationToken.Running[] result = new CancellationToken.Running[frames.length];
+            try {
+                for (int i = 0; i < frames.length; i++) {
+                    if (frames[i] != null) {
+                        result[i] = CancellationToken.begin(frames[i]);
+                    }
+                }
+            } catch (CancellationException e) {
+                end(result);
+                throw e;
+            }
+            return result;
+        }
+
+        private void end(CancellationToken.Running[] running) {
+            if (running != null) {
+                for (CancellationToken.Running r : running) {
+                    CancellationToken.end(r);
+                }
+            }
+        }
+
+        private void attachOrigin(Throwable thrown) {
+            for (Frame frame : frames) {
+                if (frame != null) {
+                    frame.attachOrigin(thrown);
+                }
+            }
+        }
+
+        void run(Runnable run) {
+            CancellationToken.Running[] running = begin();
+            try {
+                long entered = enter();
+                try {
+                    run.run();
+                } catch (RuntimeException | Error e) {
+                    attachOrigin(e);
+                    throw e;
+                } finally {
+                    exit(entered);
+                }
+            } finally {
+                end(running);
+            }
+        }
+
+        <T> T call(Callable<T> call) throws Exception {
+            CancellationToken.Running[] running = begin();
+            try {
+                long entered = enter();
+                try {
+                    return call.call();
+                } catch (Exception | Error e) {
+                    attachOrigin(e);
+                    throw e;
+                } finally {
+                    exit(entered);
+                }
+            } finally {
+                end(running);
+            }
+        }
+
+        <T> T get(Supplier<T> supplier) {
+            CancellationToken.Running[] running = begin();
+            try {
+                long entered = enter();
+                try {
+                    return supplier.get();
+                } catch (RuntimeException | Error e) {
+                    attachOrigin(e);
+                    throw e;
+                } finally {
+                    exit(entered);
+                }
+            } finally {
+                end(running);
+            }
+        }
+    }
+
+    static final class WrapRunnable implements Runnable {
+
+        private final Snapshot snapshot;
+        private final Runnable run;
+        private final byte deadlinePolicy;
+
+        WrapRunnable(Snapshot snapshot, Runnable run, byte deadlinePolicy) {
+            this.snapshot = snapshot;
+            this.run = run;
+            this.deadlinePolicy = deadlinePolicy;
+        }
+
+        ScopeSet owner() {
+            return snapshot.owner();
+        }
+
+        Runnable unwrap() {
+            return run;
+        }
+
+        @Override
+        public void run() {
+            if (deadlinePolicy != AbstractScope.WrapRunnable.RUN_ALWAYS) {
+                Frame shed = snapshot.shed(run);
+                if (shed != null) {
+                    if (deadlinePolicy == AbstractScope.WrapRunnable.FAIL_IF_EXPIRED) {
+                        throw AbstractScope.shedFailure(shed);
+                    }
+                    return;
+                }
+            }
+            snapshot.run(run);
+        }
+
+        @Override
+        public String toString() {
+            return "Wrapper{" + run + "} with " + Arrays.toString(snapshot.frames);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrapper for an ExecutorService which runs everything submitted to it with
+ * the contents of every scope in a ScopeSet, captured with one snapshot per
+ * task.
+ *
+ * @author Tim Boudreau
+ */
+class ScopeSetThreadPool extends WrappingExecutorService {
+
+    final ScopeSet scopes;
+
+    ScopeSetThreadPool(ScopeSet scopes, ExecutorService executor) {
+        super(executor);
+        this.scopes = scopes;
+    }
+
+    @Override
+    Runnable wrapTask(Runnable task, boolean failFast) {
+        return scopes.wrapTask(task, failFast);
+    }
+
+    @Override
+    <T> Callable<T> wrapTask(Callable<T> task) {
+        return scopes.wrapTask(task);
+    }
+
+    @Override
+    <T> Future<T> submitTo(ExecutorService executor, Callable<T> task) {
+        return scopes.submitTo(executor, task);
+    }
+
+    @Override
+    Runnable unwrap(Runnable task) {
+        return task instanceof ScopeSet.WrapRunnable
+                ? ((ScopeSet.WrapRunnable) task).unwrap() : task;
+    }
+
+    static final class Scheduled extends ScopeSetThreadPool implements ScheduledExecutorService {
+
+        private final ScheduledExecutorService scheduler;
+
+        Scheduled(ScopeSet scopes, ScheduledExecutorService scheduler) {
+            super(scopes, scheduler);
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return scheduler.schedule(wrapTask(command, true), delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            return scheduler.schedule(wrapTask(callable), delay, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return scheduler.scheduleAtFixedRate(wrapTask(command, true), initialDelay, period, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            return scheduler.scheduleWithFixedDelay(wrapTask(command, true), initialDelay, delay, unit);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A CompletionStage whose dependent stages all run with the contents of a
+ * scope as they were when it was created - on whatever thread they complete
+ * on. The scope contents are captured once, and shared by every stage chained
+ * from this one, so there is no need to call <code>wrap()</code> on each
+ * function passed to it. Async variants which do not take an executor use the
+ * one this stage was created with.
+ * <p/>
+ * Obtain one from <code>AbstractScope.stage()</code>,
+ * <code>AbstractScope.supplyAsync()</code> or
+ * <code>AbstractScope.runAsync()</code>.
+ *
+ * @author Tim Boudreau
+ */
+public final class ScopedCompletionStage<T> implements CompletionStage<T> {
+
+    private final AbstractScope scope;
+    private final Frame snapshot;
+    private final CompletableFuture<T> future;
+    private final Executor executor;
+
+    ScopedCompletionStage(AbstractScope scope, Frame snapshot, CompletableFuture<T> future, Executor executor) {
+        this.scope = scope;
+        this.snapshot = snapshot;
+        this.future = future;
+        this.executor = executor;
+    }
+
+    /**
+     * Determine if wrapping this stage again would change nothing - it
+     * belongs to the passed scope, uses the passed executor, and carries
+     * what is in scope on the calling thread now.
+     */
+    boolean propagates(AbstractScope scope, Executor executor) {
+        return this.scope == scope && this.executor == executor
+                && snapshot.isEquivalentTo(scope.currentFrame());
+    }
+
+    private <U> ScopedCompletionStage<U> next(CompletableFuture<U> fut) {
+        return new ScopedCompletionStage<>(scope, snapshot, fut, executor);
+    }
+
+    private void run(Runnable run) {
+        try {
+            scope.runIn(snapshot, run);
+        } catch (RuntimeException | Error e) {
+            snapshot.attachOrigin(e);
+            throw e;
+        }
+    }
+
+    private <R> R get(Supplier<R> supplier) {
+        try {
+            return scope.getIn(snapshot, supplier);
+        } catch (RuntimeException | Error e) {
+            snapshot.attachOrigin(e);
+            throw e;
+        }
+    }
+
+    private <A, R> Function<A, R> inScope(Function<? super A, ? extends R> fn) {
+        return a -> get(() -> fn.apply(a));
+    }
+
+    private <A, B, R> BiFunction<A, B, R> inScope(BiFunction<? super A, ? super B, ? extends R> fn) {
+        return (a, b) -> get(() -> fn.apply(a, b));
+    }
+
+    private <A> Consumer<A> inScope(Consumer<? super A> consumer) {
+        return a -> run(() -> consumer.accept(a));
+    }
+
+    private <A, B> BiConsumer<A, B> inScope(BiConsumer<? super A, ? super B> consumer) {
+        return (a, b) -> run(() -> consumer.accept(a, b));
+    }
+
+    private Runnable inScope(Runnable runnable) {
+        return () -> run(runnable);
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> thenApply(Function<? super T, ? extends U> fn) {
+        return next(future.thenApply(inScope(fn)));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> thenApplyAsync(Function<? super T, ? extends U> fn) {
+        return thenApplyAsync(fn, executor);
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor) {
+        return next(future.thenApplyAsync(inScope(fn), executor));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> thenAccept(Consumer<? super T> action) {
+        return next(future.thenAccept(inScope(action)));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> thenAcceptAsync(Consumer<? super T> action) {
+        return thenAcceptAsync(action, executor);
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor) {
+        return next(future.thenAcceptAsync(inScope(action), executor));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> thenRun(Runnable action) {
+        return next(future.thenRun(inScope(action)));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> thenRunAsync(Runnable action) {
+        return thenRunAsync(action, executor);
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> thenRunAsync(Runnable action, Executor executor) {
+        return next(future.thenRunAsync(inScope(action), executor));
+    }
+
+    @Override
+    public <U, V> ScopedCompletionStage<V> thenCombine(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return next(future.thenCombine(other, inScope(fn)));
+    }
+
+    @Override
+    public <U, V> ScopedCompletionStage<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return thenCombineAsync(other, fn, executor);
+    }
+
+    @Override
+    public <U, V> ScopedCompletionStage<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn, Executor executor) {
+        return next(future.thenCombineAsync(other, inScope(fn), executor));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<Void> thenAcceptBoth(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return next(future.thenAcceptBoth(other, inScope(action)));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return thenAcceptBothAsync(other, action, executor);
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action, Executor executor) {
+        return next(future.thenAcceptBothAsync(other, inScope(action), executor));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
+        return next(future.runAfterBoth(other, inScope(action)));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+        return runAfterBothAsync(other, action, executor);
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return next(future.runAfterBothAsync(other, inScope(action), executor));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> applyToEither(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return next(future.applyToEither(other, inScope(fn)));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return applyToEitherAsync(other, fn, executor);
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn, Executor executor) {
+        return next(future.applyToEitherAsync(other, inScope(fn), executor));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> acceptEither(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return next(future.acceptEither(other, inScope(action)));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return acceptEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action, Executor executor) {
+        return next(future.acceptEitherAsync(other, inScope(action), executor));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
+        return next(future.runAfterEither(other, inScope(action)));
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+        return runAfterEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public ScopedCompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return next(future.runAfterEitherAsync(other, inScope(action), executor));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return next(future.thenCompose(inScope(fn)));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return thenComposeAsync(fn, executor);
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn, Executor executor) {
+        return next(future.thenComposeAsync(inScope(fn), executor));
+    }
+
+    @Override
+    public ScopedCompletionStage<T> exceptionally(Function<Throwable, ? extends T> fn) {
+        return next(future.exceptionally(inScope(fn)));
+    }
+
+    @Override
+    public ScopedCompletionStage<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
+        return next(future.whenComplete(inScope(action)));
+    }
+
+    @Override
+    public ScopedCompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action) {
+        return whenCompleteAsync(action, executor);
+    }
+
+    @Override
+    public ScopedCompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+        return next(future.whenCompleteAsync(inScope(action), executor));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> handle(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return next(future.handle(inScope(fn)));
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return handleAsync(fn, executor);
+    }
+
+    @Override
+    public <U> ScopedCompletionStage<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn, Executor executor) {
+        return next(future.handleAsync(inScope(fn), executor));
+    }
+
+    @Override
+    public CompletableFuture<T> toCompletableFuture() {
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return "Scoped(" + future + " in " + snapshot.size() + " objects)";
+    }
+}
@@ -0,0 +1,256 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A group of subtasks forked from within a scope, which all run with the
+ * scope contents as they were when the group was created, and which cannot
+ * outlive the block that created them:
+ * <pre>
+ * try (ScopedFork fork = scope.fork(executor)) {
+ *     Future&lt;User&gt; user = fork.fork(this::findUser);
+ *     Future&lt;Order&gt; order = fork.fork(this::findOrder);
+ *     fork.join();
+ *     ...
+ * }
+ * </pre>
+ * The scope is captured once for the whole group rather than once per task.
+ * The first subtask to fail cancels (interrupting) the rest, and
+ * <code>join()</code> throws its failure. Closing the group cancels anything
+ * still running and waits for every subtask to actually finish, so nothing
+ * forked is still running with the entry's objects after the entry exits.
+ * <p/>
+ * The executor should not itself be wrapped by the scope, or each subtask
+ * would be snapshotted again.
+ *
+ * @author Tim Boudreau
+ */
+public final class ScopedFork implements QuietAutoClosable {
+
+    private final AbstractScope scope;
+    private final Executor executor;
+    private final Frame snapshot;
+    private final ConcurrentLinkedQueue<Subtask<?>> subtasks = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // Guarded by this
+    private int outstanding;
+    private volatile boolean closed;
+
+    ScopedFork(AbstractScope scope, Executor executor) {
+        this.scope = scope;
+        this.executor = executor;
+        this.snapshot = scope.tracedSnapshot();
+    }
+
+    /**
+     * Start a subtask. If another subtask has already failed, it is not
+     * started, and the returned future is cancelled.
+     *
+     * @param <T> The result type
+     * @param callable The work
+     * @return A future for its result
+     * @throws IllegalStateException if the group has been closed
+     */
+    public <T> Future<T> fork(Callable<T> callable) {
+        if (closed) {
+            throw new IllegalStateException("Closed");
+        }
+        Subtask<T> task = new Subtask<>(callable);
+        synchronized (this) {
+            outstanding++;
+        }
+        subtasks.add(task);
+        if (failure.get() != null) {
+            task.cancel(false);
+            return task;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Fail it the way it would fail had it run, so siblings are
+            // cancelled, and count it finished
+            task.reject(e);
+        }
+        return task;
+    }
+
+    /**
+     * Wait for every subtask to finish.
+     *
+     * @throws InterruptedException if interrupted
+     * @throws ExecutionException if a subtask failed, with the first failure
+     * as its cause
+     */
+    public void join() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (outstanding > 0) {
+                wait();
+            }
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * Wait for every subtask to finish, for a limited time.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @throws InterruptedException if interrupted
+     * @throws ExecutionException if a subtask failed, with the first failure
+     * as its cause
+     * @throws TimeoutException if subtasks are still running when the time
+     * is up - they are not cancelled until the group is closed
+     */
+    public void join(long timeout, TimeUnit unit) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (outstanding > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException(outstanding + " subtasks still running");
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() throws ExecutionException {
+        Throwable failed = failure.get();
+        if (failed != null) {
+            throw new ExecutionException(failed);
+        }
+    }
+
+    /**
+     * Cancel every subtask which has not finished, interrupting those which
+     * are running, and wait for them all to finish. If the calling thread is
+     * interrupted while waiting, it keeps waiting, and is interrupted again
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        cancelAll();
+        boolean interrupted = false;
+        synchronized (this) {
+            while (outstanding > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cancelAll() {
+        for (Subtask<?> task : subtasks) {
+            task.cancel(true);
+        }
+    }
+
+    private void failed(Throwable thrown) {
+        if (failure.compareAndSet(null, thrown)) {
+            snapshot.attachOrigin(thrown);
+            cancelAll();
+        }
+    }
+
+    private synchronized void finished() {
+        if (--outstanding == 0) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ScopedFork(" + subtasks.size() + " subtasks"
+                + (failure.get() == null ? "" : " failed: " + failure.get()) + ")";
+    }
+
+    private final class Subtask<T> extends FutureTask<T> {
+
+        // Set by whichever of run() and cancel() gets here first, so a
+        // subtask is counted finished exactly once, even if the executor
+        // never runs it
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Subtask(Callable<T> callable) {
+            super(() -> scope.callIn(snapshot, callable));
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                finished();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean result = super.cancel(mayInterruptIfRunning);
+            if (claimed.compareAndSet(false, true)) {
+                // Will never run
+                finished();
+            }
+            return result;
+        }
+
+        void reject(Throwable thrown) {
+            if (claimed.compareAndSet(false, true)) {
+                setException(thrown);
+                finished();
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            super.setException(t);
+            failed(t);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Base class for a result-bearing fork-join task which runs with the contents
+ * of a scope as they were when it was created. A subtask created while its
+ * parent is computing shares the parent's snapshot by reference, so a whole
+ * tree of forked tasks captures the scope once; a worker which steals a
+ * subtask installs that snapshot, and a subtask run inline on its parent's
+ * thread does not re-enter the scope at all.
+ * <p/>
+ * If the parent enters additional objects into the scope before creating a
+ * subtask, the subtask captures those too.
+ *
+ * @author Tim Boudreau
+ */
+public abstract class ScopedRecursiveTask<V> extends RecursiveTask<V> {
+
+    private static final long serialVersionUID = 1;
+    private final transient AbstractScope scope;
+    private final transient Frame snapshot;
+
+    protected ScopedRecursiveTask(AbstractScope scope) {
+        this.scope = scope;
+        this.snapshot = ForkJoinScoping.inherit(scope);
+    }
+
+    /**
+     * Perform the computation, with the scope contents in place.
+     *
+     * @return The result of the computation
+     */
+    protected abstract V computeInScope();
+
+    @Override
+    protected final V compute() {
+        return ForkJoinScoping.compute(scope, snapshot, this::computeInScope);
+    }
+}
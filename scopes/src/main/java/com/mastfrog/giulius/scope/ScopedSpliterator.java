@@ -0,0 +1,98 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator which runs traversal with a scope snapshot in place, so stream
+ * operations see the scope contents on whatever worker thread processes a
+ * split. Bulk traversal enters the scope once per split, not per element;
+ * splits share the snapshot by reference. Single-element traversal via
+ * tryAdvance() (used by short-circuiting operations) has to enter per call,
+ * since nothing tells us when a consumer will stop calling it.
+ *
+ * @author Tim Boudreau
+ */
+final class ScopedSpliterator<T> implements Spliterator<T> {
+
+    private final AbstractScope scope;
+    private final Frame snapshot;
+    private final Spliterator<T> delegate;
+
+    ScopedSpliterator(AbstractScope scope, Frame snapshot, Spliterator<T> delegate) {
+        this.scope = scope;
+        this.snapshot = snapshot;
+        this.delegate = delegate;
+    }
+
+    private void run(Runnable run) {
+        try {
+            scope.runIn(snapshot, run);
+        } catch (RuntimeException | Error e) {
+            snapshot.attachOrigin(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        boolean[] result = new boolean[1];
+        run(() -> result[0] = delegate.tryAdvance(action));
+        return result[0];
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        run(() -> delegate.forEachRemaining(action));
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        Spliterator<T> split = delegate.trySplit();
+        return split == null ? null : new ScopedSpliterator<>(scope, snapshot, split);
+    }
+
+    @Override
+    public long estimateSize() {
+        return delegate.estimateSize();
+    }
+
+    @Override
+    public long getExactSizeIfKnown() {
+        return delegate.getExactSizeIfKnown();
+    }
+
+    @Override
+    public int characteristics() {
+        return delegate.characteristics();
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return delegate.getComparator();
+    }
+}
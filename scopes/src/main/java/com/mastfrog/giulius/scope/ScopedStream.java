@@ -0,0 +1,293 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stream returned by AbstractScope.stream() and parallel(). Stateful
+ * operations (sorted(), distinct(), limit(), skip()) are barriers: the JDK
+ * runs the stages after them over its own buffers, not over the scoped
+ * spliterator the stream was created from, so without help those stages run
+ * without the scope - in fork-join workers for a parallel stream, and after
+ * the source is exhausted for a sequential one. This re-scopes the stream
+ * after each barrier by putting another ScopedSpliterator, sharing the same
+ * snapshot, over the spliterator of the stateful stage.
+ * <p/>
+ * Primitive streams from mapToInt() and friends are the JDK's own, so
+ * stateful operations on them are not re-scoped; nor are comparators passed
+ * to sorted() on a parallel stream, which the JDK's parallel sort calls from
+ * its own tasks.
+ *
+ * @author Tim Boudreau
+ */
+final class ScopedStream<T> implements Stream<T> {
+
+    private final AbstractScope scope;
+    private final Frame snapshot;
+    private final Stream<T> delegate;
+
+    ScopedStream(AbstractScope scope, Frame snapshot, Stream<T> delegate) {
+        this.scope = scope;
+        this.snapshot = snapshot;
+        this.delegate = delegate;
+    }
+
+    static <T> ScopedStream<T> create(AbstractScope scope, Frame snapshot,
+            Spliterator<T> spliterator, boolean parallel) {
+        return new ScopedStream<>(scope, snapshot, StreamSupport.stream(
+                new ScopedSpliterator<>(scope, snapshot, spliterator), parallel));
+    }
+
+    private <R> Stream<R> chain(Stream<R> next) {
+        return new ScopedStream<>(scope, snapshot, next);
+    }
+
+    private Stream<T> rescope(Stream<T> barrier) {
+        return create(scope, snapshot, barrier.spliterator(), barrier.isParallel())
+                .onClose(barrier::close);
+    }
+
+    @Override
+    public Stream<T> filter(Predicate<? super T> predicate) {
+        return chain(delegate.filter(predicate));
+    }
+
+    @Override
+    public <R> Stream<R> map(Function<? super T, ? extends R> mapper) {
+        return chain(delegate.map(mapper));
+    }
+
+    @Override
+    public IntStream mapToInt(ToIntFunction<? super T> mapper) {
+        return delegate.mapToInt(mapper);
+    }
+
+    @Override
+    public LongStream mapToLong(ToLongFunction<? super T> mapper) {
+        return delegate.mapToLong(mapper);
+    }
+
+    @Override
+    public DoubleStream mapToDouble(ToDoubleFunction<? super T> mapper) {
+        return delegate.mapToDouble(mapper);
+    }
+
+    @Override
+    public <R> Stream<R> flatMap(Function<? super T, ? extends Stream<? extends R>> mapper) {
+        return chain(delegate.flatMap(mapper));
+    }
+
+    @Override
+    public IntStream flatMapToInt(Function<? super T, ? extends IntStream> mapper) {
+        return delegate.flatMapToInt(mapper);
+    }
+
+    @Override
+    public LongStream flatMapToLong(Function<? super T, ? extends LongStream> mapper) {
+        return delegate.flatMapToLong(mapper);
+    }
+
+    @Override
+    public DoubleStream flatMapToDouble(Function<? super T, ? extends DoubleStream> mapper) {
+        return delegate.flatMapToDouble(mapper);
+    }
+
+    @Override
+    public Stream<T> distinct() {
+        return rescope(delegate.distinct());
+    }
+
+    @Override
+    public Stream<T> sorted() {
+        return rescope(delegate.sorted());
+    }
+
+    @Override
+    public Stream<T> sorted(Comparator<? super T> comparator) {
+        return rescope(delegate.sorted(comparator));
+    }
+
+    @Override
+    public Stream<T> peek(Consumer<? super T> action) {
+        return chain(delegate.peek(action));
+    }
+
+    @Override
+    public Stream<T> limit(long maxSize) {
+        return rescope(delegate.limit(maxSize));
+    }
+
+    @Override
+    public Stream<T> skip(long n) {
+        return rescope(delegate.skip(n));
+    }
+
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public void forEachOrdered(Consumer<? super T> action) {
+        delegate.forEachOrdered(action);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return delegate.toArray();
+    }
+
+    @Override
+    public <A> A[] toArray(IntFunction<A[]> generator) {
+        return delegate.toArray(generator);
+    }
+
+    @Override
+    public T reduce(T identity, BinaryOperator<T> accumulator) {
+        return delegate.reduce(identity, accumulator);
+    }
+
+    @Override
+    public Optional<T> reduce(BinaryOperator<T> accumulator) {
+        return delegate.reduce(accumulator);
+    }
+
+    @Override
+    public <U> U reduce(U identity, BiFunction<U, ? super T, U> accumulator,
+            BinaryOperator<U> combiner) {
+        return delegate.reduce(identity, accumulator, combiner);
+    }
+
+    @Override
+    public <R> R collect(Supplier<R> supplier, BiConsumer<R, ? super T> accumulator,
+            BiConsumer<R, R> combiner) {
+        return delegate.collect(supplier, accumulator, combiner);
+    }
+
+    @Override
+    public <R, A> R collect(Collector<? super T, A, R> collector) {
+        return delegate.collect(collector);
+    }
+
+    @Override
+    public Optional<T> min(Comparator<? super T> comparator) {
+        return delegate.min(comparator);
+    }
+
+    @Override
+    public Optional<T> max(Comparator<? super T> comparator) {
+        return delegate.max(comparator);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public boolean anyMatch(Predicate<? super T> predicate) {
+        return delegate.anyMatch(predicate);
+    }
+
+    @Override
+    public boolean allMatch(Predicate<? super T> predicate) {
+        return delegate.allMatch(predicate);
+    }
+
+    @Override
+    public boolean noneMatch(Predicate<? super T> predicate) {
+        return delegate.noneMatch(predicate);
+    }
+
+    @Override
+    public Optional<T> findFirst() {
+        return delegate.findFirst();
+    }
+
+    @Override
+    public Optional<T> findAny() {
+        return delegate.findAny();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return delegate.iterator();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return delegate.spliterator();
+    }
+
+    @Override
+    public boolean isParallel() {
+        return delegate.isParallel();
+    }
+
+    @Override
+    public Stream<T> sequential() {
+        return chain(delegate.sequential());
+    }
+
+    @Override
+    public Stream<T> parallel() {
+        return chain(delegate.parallel());
+    }
+
+    @Override
+    public Stream<T> unordered() {
+        return chain(delegate.unordered());
+    }
+
+    @Override
+    public Stream<T> onClose(Runnable closeHandler) {
+        return chain(delegate.onClose(closeHandler));
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,94 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.Arrays;
+
+/**
+ * A thread which stores the state of the scopes in this package in a field,
+ * so looking up what is in scope on it costs an array read rather than a
+ * ThreadLocal hash probe. Scopes fall back to ThreadLocals on any other
+ * thread, so using these is purely an optimization; the executors created by
+ * scopes use them, and a ScopedThreadFactory creates them for any other pool.
+ *
+ * @see ScopedThreadFactory
+ * @author Tim Boudreau
+ */
+public class ScopedThread extends Thread {
+
+    // Indexed by FrameLocal; only touched by this thread
+    private Frame[] frames = new Frame[8];
+    // The generation of the FrameLocal which set each frame
+    private int[] generations = new int[8];
+    // The FrameLocal generations this thread last dropped stale frames against
+    private int[] swept;
+
+    public ScopedThread(Runnable target, String name) {
+        super(target, name);
+    }
+
+    public ScopedThread(ThreadGroup group, Runnable target, String name) {
+        super(group, target, name);
+    }
+
+    final Frame frame(int index, int generation) {
+        Frame[] f = frames;
+        if (index >= f.length) {
+            return null;
+        }
+        if (generations[index] != generation) {
+            // Left by a collected FrameLocal which had this index
+            f[index] = null;
+            return null;
+        }
+        return f[index];
+    }
+
+    final void setFrame(int index, int generation, Frame frame) {
+        int[] live = FrameLocal.liveGenerations();
+        if (live != swept) {
+            sweep(live);
+        }
+        if (index >= frames.length) {
+            if (frame == null) {
+                return;
+            }
+            int size = Math.max(index + 1, frames.length * 2);
+            frames = Arrays.copyOf(frames, size);
+            generations = Arrays.copyOf(generations, size);
+        }
+        frames[index] = frame;
+        generations[index] = generation;
+    }
+
+    private void sweep(int[] live) {
+        Frame[] f = frames;
+        for (int i = 0; i < f.length; i++) {
+            if (f[i] != null && (i >= live.length || live[i] != generations[i])) {
+                f[i] = null;
+            }
+        }
+        swept = live;
+    }
+}
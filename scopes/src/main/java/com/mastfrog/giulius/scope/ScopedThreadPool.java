@@ -23,104 +23,40 @@
  */
 package com.mastfrog.giulius.scope;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  *
  * @author Tim Boudreau
  */
-final class ScopedThreadPool implements ExecutorService {
+class ScopedThreadPool extends WrappingExecutorService {
     final AbstractScope scope;
-    private final ExecutorService executor;
 
     ScopedThreadPool(AbstractScope scope, ExecutorService executor) {
+        super(executor);
         this.scope = scope;
-        this.executor = executor;
     }
 
     @Override
-    public void shutdown() {
-        executor.shutdown();
+    Runnable wrapTask(Runnable task, boolean failFast) {
+        return scope.wrapTask(task, failFast);
     }
 
     @Override
-    public List<Runnable> shutdownNow() {
-        List<Runnable> found = executor.shutdownNow();
-        List<Runnable> result = new ArrayList<>(found.size());
-        for (Runnable r : found) {
-            if (r instanceof AbstractScope.WrapRunnable) {
-                r = ((AbstractScope.WrapRunnable) r).unwrap();
-            }
-            result.add(r);
-        }
-        return result;
+    <T> Callable<T> wrapTask(Callable<T> task) {
+        return scope.wrapTask(task);
     }
 
     @Override
-    public boolean isShutdown() {
-        return executor.isShutdown();
+    <T> Future<T> submitTo(ExecutorService executor, Callable<T> task) {
+        return scope.submitTo(executor, task);
     }
 
     @Override
-    public boolean isTerminated() {
-        return executor.isTerminated();
-    }
-
-    @Override
-    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-        return executor.awaitTermination(timeout, unit);
-    }
-
-    @Override
-    public <T> Future<T> submit(Callable<T> task) {
-        return executor.submit(scope.wrap(task));
-    }
-
-    @Override
-    public <T> Future<T> submit(Runnable task, T result) {
-        return executor.submit(scope.wrap(task), result);
-    }
-
-    @Override
-    public Future<?> submit(Runnable task) {
-        Runnable wrapped = scope.wrap(task);
-        return executor.submit(wrapped);
-    }
-    
-    <T> List<Callable<T>> wrap(Collection<? extends Callable<T>> tasks) {
-        List<Callable<T>> callables = new ArrayList<>(tasks.size());
-        for (Callable<T> c : tasks) {
-            callables.add(scope.wrap(c));
-        }
-        return callables;
-    }
-
-    @Override
-    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-        return executor.invokeAll(wrap(tasks));
-    }
-
-    @Override
-    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
-        return executor.invokeAll(wrap(tasks), timeout, unit);
-    }
-
-    @Override
-    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-        return executor.invokeAny(wrap(tasks));
-    }
-
-    @Override
-    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        return executor.invokeAny(wrap(tasks), timeout, unit);
-    }
-
-    @Override
-    public void execute(Runnable command) {
-//        executor.execute(scope.wrap(command));
-        executor.execute(command);
+    Runnable unwrap(Runnable task) {
+        return task instanceof AbstractScope.WrapRunnable
+                ? ((AbstractScope.WrapRunnable) task).unwrap() : task;
     }
 }
@@ -0,0 +1,461 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import com.mastfrog.function.throwing.ThrowingFunction;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Reentrant scope which, on JDK 21 and later, keeps its contents in a
+ * <code>java.lang.ScopedValue</code> rather than a ThreadLocal. Scope contents
+ * established by <code>run()</code>, <code>wrap()</code> or a wrapped thread
+ * pool are bound for the duration of that block of code; nothing is stored
+ * per-thread, there is nothing to clean up on exit, and the contents are
+ * inherited by subtasks forked in a <code>StructuredTaskScope</code>.
+ * <p/>
+ * ScopedValues can only be bound for a block of code, so the unstructured
+ * <code>enter()</code> / <code>exit()</code> pair still works, but falls back to
+ * a ThreadLocal for the frames it creates - prefer the <code>run()</code>
+ * methods. On JDKs without ScopedValue, a ThreadLocal is used for everything
+ * and the behavior is otherwise identical.
+ * <p/>
+ * Lookup semantics are the same as ReentrantScope - objects from later entries
+ * take precedence over those from earlier ones.
+ *
+ * @author Tim Boudreau
+ */
+public class ScopedValueScope extends AbstractScope {
+
+    private final Binding binding = Binding.create();
+    // Frames from enter() - which cannot be bound as a ScopedValue
+    private final FrameLocal entered = new FrameLocal();
+    private final QuietAutoClosable qac = this::exit;
+
+    public ScopedValueScope() {
+        super();
+    }
+
+    /**
+     * Create a scope with a provider for information to use in error messages
+     * when something unavailable is requested for injection.
+     *
+     * @param injectionInfoProvider
+     */
+    public ScopedValueScope(Provider<String> injectionInfoProvider) {
+        super(injectionInfoProvider);
+    }
+
+    /**
+     * Determine if scope contents are being held in a ScopedValue, or if the
+     * JDK does not support them and a ThreadLocal is being used.
+     *
+     * @return true if ScopedValue is in use
+     */
+    public static boolean isScopedValueAvailable() {
+        return ScopedValueBinding.AVAILABLE;
+    }
+
+    @Override
+    Frame currentFrame() {
+        Frame bound = binding.get();
+        Frame fromEnter = entered.get();
+        if (bound == null) {
+            return fromEnter;
+        } else if (fromEnter == null) {
+            return bound;
+        }
+        // Each new frame is always deeper than whatever was current when
+        // it was created, so the deeper of the two is the most recent
+        return fromEnter.depth > bound.depth ? fromEnter : bound;
+    }
+
+    private Frame frameFor(Frame snapshot, Frame restore) {
+        Frame current = currentFrame();
+        if (current == null) {
+            return Frame.install(snapshot, restore);
+        }
+        // Already in scope - the snapshot's contents go on top
+        return newFrame(snapshot.flatten(), current, restore);
+    }
+
+    private Frame frameFor(Frame snapshot) {
+        return frameFor(snapshot, null);
+    }
+
+    @Override
+    protected QuietAutoClosable enter(Object... scopeContents) {
+        Frame frame = newFrame(scopeContents, currentFrame(), entered.get());
+        entered.set(frame);
+        notifyEnter(frame);
+        return qac;
+    }
+
+    @Override
+    QuietAutoClosable enterSnapshot(Frame snapshot) {
+        Frame frame = frameFor(snapshot, entered.get());
+        entered.set(frame);
+        notifyEnter(frame);
+        return qac;
+    }
+
+    @Override
+    protected void exit() {
+        Frame frame = entered.get();
+        if (frame == null) {
+            throw new IllegalStateException("Not in scope via enter() " + this);
+        }
+        entered.set(frame.restore);
+        notifyExit(frame);
+    }
+
+    @Override
+    protected <T> T get(Class<T> type) {
+        return lookup(currentFrame(), slotIfBound(type), type);
+    }
+
+    @Override
+    <T> T get(int slot, Class<T> type) {
+        return lookup(currentFrame(), slot, type);
+    }
+
+    @Override
+    public boolean inScope() {
+        return currentFrame() != null;
+    }
+
+    @Override
+    protected List<Object> contents() {
+        Frame frame = currentFrame();
+        return frame == null ? new ArrayList<>(0) : frame.toList();
+    }
+
+    @Override
+    Frame snapshot() {
+        Frame result = currentFrame();
+        return result == null ? newFrame(Frame.EMPTY, null) : result;
+    }
+
+    @Override
+    boolean isCurrent(Frame snapshot) {
+        Frame current = currentFrame();
+        return current != null && current.isEquivalentTo(snapshot);
+    }
+
+    @Override
+    void runIn(Frame snapshot, Runnable run) {
+        CancellationToken.Running running = CancellationToken.begin(snapshot);
+        try {
+            if (isCurrent(snapshot)) {
+                run.run();
+                return;
+            }
+            bound(frameFor(snapshot), run);
+        } finally {
+            CancellationToken.end(running);
+        }
+    }
+
+    @Override
+    <T> T callIn(Frame snapshot, Callable<T> call) throws Exception {
+        CancellationToken.Running running = CancellationToken.begin(snapshot);
+        try {
+            if (isCurrent(snapshot)) {
+                return call.call();
+            }
+            return bound(frameFor(snapshot), call);
+        } finally {
+            CancellationToken.end(running);
+        }
+    }
+
+    @Override
+    <T> T getIn(Frame snapshot, Supplier<T> supplier) {
+        CancellationToken.Running running = CancellationToken.begin(snapshot);
+        try {
+            if (isCurrent(snapshot)) {
+                return supplier.get();
+            }
+            Frame frame = frameFor(snapshot);
+            notifyEnter(frame);
+            try {
+                return binding.get(frame, supplier);
+            } finally {
+                notifyExit(frame);
+            }
+        } finally {
+            CancellationToken.end(running);
+        }
+    }
+
+    @Override
+    public void run(Runnable runnable, Object... args) {
+        bound(newFrame(args, currentFrame()), runnable);
+    }
+
+    @Override
+    public <T> T run(Callable<T> callable, Object... args) throws Exception {
+        return bound(newFrame(args, currentFrame()), callable);
+    }
+
+    // Bind, rather than inheriting versions which use enter() / exit()
+
+    @Override
+    public void run(Runnable runnable, Object a) {
+        run(runnable, new Object[]{a});
+    }
+
+    @Override
+    public void run(Runnable runnable, Object a, Object b) {
+        run(runnable, new Object[]{a, b});
+    }
+
+    @Override
+    public void run(Runnable runnable, Object a, Object b, Object c) {
+        run(runnable, new Object[]{a, b, c});
+    }
+
+    @Override
+    public <T> T run(Callable<T> callable, Object a) throws Exception {
+        return run(callable, new Object[]{a});
+    }
+
+    @Override
+    public <T> T run(Callable<T> callable, Object a, Object b) throws Exception {
+        return run(callable, new Object[]{a, b});
+    }
+
+    @Override
+    public <T> T run(Callable<T> callable, Object a, Object b, Object c) throws Exception {
+        return run(callable, new Object[]{a, b, c});
+    }
+
+    @Override
+    public <T, A> T run(ThrowingFunction<A, T> invokable, A arg, Object... scopeContents) throws Exception {
+        return bound(newFrame(scopeContents, currentFrame()), () -> invokable.apply(arg));
+    }
+
+    private void bound(Frame frame, Runnable run) {
+        notifyEnter(frame);
+        try {
+            binding.run(frame, run);
+        } finally {
+            notifyExit(frame);
+        }
+    }
+
+    private <T> T bound(Frame frame, Callable<T> call) throws Exception {
+        notifyEnter(frame);
+        try {
+            return binding.call(frame, call);
+        } finally {
+            notifyExit(frame);
+        }
+    }
+
+    /**
+     * Holds the frame bound for the duration of a block of code.
+     */
+    static abstract class Binding {
+
+        static Binding create() {
+            return ScopedValueBinding.AVAILABLE
+                    ? new ScopedValueBinding()
+                    : new ThreadLocalBinding();
+        }
+
+        abstract Frame get();
+
+        abstract void run(Frame frame, Runnable run);
+
+        <T> T call(Frame frame, Callable<T> call) throws Exception {
+            CallRunner<T> runner = new CallRunner<>(call);
+            run(frame, runner);
+            return runner.result();
+        }
+
+        <T> T get(Frame frame, Supplier<T> supplier) {
+            SupplierRunner<T> runner = new SupplierRunner<>(supplier);
+            run(frame, runner);
+            return runner.result;
+        }
+    }
+
+    private static final class CallRunner<T> implements Runnable {
+
+        private final Callable<T> call;
+        private T result;
+        private Exception thrown;
+
+        CallRunner(Callable<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = call.call();
+            } catch (Exception ex) {
+                thrown = ex;
+            }
+        }
+
+        T result() throws Exception {
+            if (thrown != null) {
+                throw thrown;
+            }
+            return result;
+        }
+    }
+
+    private static final class SupplierRunner<T> implements Runnable {
+
+        private final Supplier<T> supplier;
+        private T result;
+
+        SupplierRunner(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            result = supplier.get();
+        }
+    }
+
+    static final class ThreadLocalBinding extends Binding {
+
+        private final FrameLocal value = new FrameLocal();
+
+        @Override
+        Frame get() {
+            return value.get();
+        }
+
+        @Override
+        void run(Frame frame, Runnable run) {
+            Frame old = value.get();
+            value.set(frame);
+            try {
+                run.run();
+            } finally {
+                value.set(old);
+            }
+        }
+    }
+
+    /**
+     * Uses java.lang.ScopedValue via method handles, so this library can still
+     * be built for and run on older JDKs.
+     */
+    static final class ScopedValueBinding extends Binding {
+
+        static final boolean AVAILABLE;
+        private static final MethodHandle NEW_INSTANCE;
+        private static final MethodHandle WHERE;
+        private static final MethodHandle RUN;
+        private static final MethodHandle IS_BOUND;
+        private static final MethodHandle GET;
+
+        static {
+            MethodHandle newInstance = null;
+            MethodHandle where = null;
+            MethodHandle run = null;
+            MethodHandle isBound = null;
+            MethodHandle get = null;
+            boolean available = false;
+            if (!Boolean.getBoolean("scopes.no.scoped.value")) {
+                try {
+                    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                    Class<?> sv = Class.forName("java.lang.ScopedValue");
+                    Class<?> carrier = Class.forName("java.lang.ScopedValue$Carrier");
+                    newInstance = lookup.findStatic(sv, "newInstance", methodType(sv))
+                            .asType(methodType(Object.class));
+                    where = lookup.findStatic(sv, "where", methodType(carrier, sv, Object.class))
+                            .asType(methodType(Object.class, Object.class, Object.class));
+                    run = lookup.findVirtual(carrier, "run", methodType(void.class, Runnable.class))
+                            .asType(methodType(void.class, Object.class, Runnable.class));
+                    isBound = lookup.findVirtual(sv, "isBound", methodType(boolean.class))
+                            .asType(methodType(boolean.class, Object.class));
+                    get = lookup.findVirtual(sv, "get", methodType(Object.class))
+                            .asType(methodType(Object.class, Object.class));
+                    // Preview builds may refuse at runtime
+                    Object test = (Object) newInstance.invokeExact();
+                    available = test != null;
+                } catch (Throwable ex) {
+                    available = false;
+                }
+            }
+            NEW_INSTANCE = newInstance;
+            WHERE = where;
+            RUN = run;
+            IS_BOUND = isBound;
+            GET = get;
+            AVAILABLE = available;
+        }
+
+        private final Object key;
+
+        ScopedValueBinding() {
+            try {
+                key = (Object) NEW_INSTANCE.invokeExact();
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        Frame get() {
+            try {
+                if (!(boolean) IS_BOUND.invokeExact(key)) {
+                    return null;
+                }
+                return (Frame) (Object) GET.invokeExact(key);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        void run(Frame frame, Runnable run) {
+            try {
+                Object carrier = (Object) WHERE.invokeExact(key, (Object) frame);
+                RUN.invokeExact(carrier, run);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor which starts a new virtual thread for each task, with the contents
+ * of the scope at the time the task was submitted already in place when it
+ * runs. Unlike a wrapped thread pool, there is never anything in scope on a
+ * new thread to preserve, so the snapshot is simply installed. On JDKs without
+ * virtual threads, a new daemon platform thread is used per task instead.
+ * <p/>
+ * Obtain one from <code>AbstractScope.newVirtualThreadExecutor()</code>.
+ *
+ * @author Tim Boudreau
+ */
+public final class ScopedVirtualThreadExecutor extends ScopedExecutorService {
+
+    private static final ThreadFactory VIRTUAL = virtualThreadFactory();
+    private final AbstractScope scope;
+    private final ThreadFactory threadFactory;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final LongAdder completed = new LongAdder();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile boolean shutdown;
+
+    ScopedVirtualThreadExecutor(AbstractScope scope) {
+        this.scope = scope;
+        this.threadFactory = VIRTUAL == null ? new PlatformThreadFactory() : VIRTUAL;
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        // Reflectively, since this library is still built for JDK 8
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Method name = builderType.getMethod("name", String.class, long.class);
+            Method factory = builderType.getMethod("factory");
+            Object builder = ofVirtual.invoke(null);
+            builder = name.invoke(builder, "scoped-virtual-", 0L);
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception | LinkageError ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determine if tasks are run on virtual threads, or if the JDK does not
+     * support them and platform threads are being used.
+     *
+     * @return true if virtual threads are used
+     */
+    public boolean isVirtual() {
+        return threadFactory == VIRTUAL;
+    }
+
+    /**
+     * Get the number of tasks which have been started and not yet finished.
+     *
+     * @return The number of live tasks
+     */
+    public int liveTasks() {
+        return threads.size();
+    }
+
+    /**
+     * Get the number of tasks which have run to completion, successfully or
+     * not.
+     *
+     * @return The number of completed tasks
+     */
+    public long completedTasks() {
+        return completed.sum();
+    }
+
+    @Override
+    AbstractScope scope() {
+        return scope;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Shut down: " + this);
+        }
+        Frame snapshot = scope.inScope() ? scope.tracedSnapshot() : null;
+        Thread thread = threadFactory.newThread(new TaskRunner(snapshot, command));
+        threads.add(thread);
+        if (shutdown) {
+            // Lost a race with shutdown()
+            threads.remove(thread);
+            tryTerminate();
+            throw new RejectedExecutionException("Shut down: " + this);
+        }
+        thread.start();
+    }
+
+    private final class TaskRunner implements Runnable {
+
+        private final Frame snapshot;
+        private final Runnable run;
+
+        TaskRunner(Frame snapshot, Runnable run) {
+            this.snapshot = snapshot;
+            this.run = run;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (snapshot == null) {
+                    run.run();
+                } else if (!scope.shed(snapshot, run)) {
+                    try {
+                        scope.runIn(snapshot, run);
+                    } catch (CancellationException e) {
+                        if (!(run instanceof Future<?>)) {
+                            throw e;
+                        }
+                        // Cancelled after shed() checked - a Future never
+                        // throws, so it did not run
+                        ((Future<?>) run).cancel(false);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                if (snapshot != null) {
+                    snapshot.attachOrigin(e);
+                }
+                throw e;
+            } finally {
+                completed.increment();
+                threads.remove(Thread.currentThread());
+                if (shutdown) {
+                    tryTerminate();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return run.toString();
+        }
+    }
+
+    private void tryTerminate() {
+        if (threads.isEmpty()) {
+            terminated.countDown();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        tryTerminate();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + scope.getClass().getSimpleName()
+                + " live " + liveTasks() + " completed " + completedTasks()
+                + (isVirtual() ? "" : " platform-threads") + ")";
+    }
+
+    private static final class PlatformThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread result = new ScopedThread(r, "scoped-task-" + COUNT.getAndIncrement());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread pool which owns its threads, and so can keep a snapshot entered on
+ * a worker across consecutive tasks which share it. A worker which finishes a
+ * task stays in the scope, and only exits and re-enters it if the next task's
+ * snapshot is a different one - so a request which fans out many tasks pays
+ * for one entry per worker rather than one per task. A worker which finds the
+ * queue empty exits the scope before it waits for more work, so nothing is
+ * retained by an idle thread.
+ *
+ * @author Tim Boudreau
+ */
+final class ScopedWorkerPool extends ScopedExecutorService {
+
+    private final AbstractScope scope;
+    private final ThreadPoolExecutor pool;
+    // The snapshot each worker has entered, if any
+    private final FrameLocal entered = new FrameLocal();
+    private final LongAdder reentries = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+
+    ScopedWorkerPool(AbstractScope scope, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be > 0: " + threads);
+        }
+        this.scope = scope;
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new WorkQueue(), new ScopedThreadFactory("scoped-worker", true));
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The number of tasks which had to enter the scope.
+     */
+    long reentries() {
+        return reentries.sum();
+    }
+
+    /**
+     * The number of tasks which ran in a snapshot a previous task on the same
+     * worker had already entered.
+     */
+    long reuses() {
+        return reuses.sum();
+    }
+
+    @Override
+    AbstractScope scope() {
+        return scope;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        pool.execute(new Task(scope.inScope() ? scope.tracedSnapshot() : null, command));
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> found = pool.shutdownNow();
+        List<Runnable> result = new ArrayList<>(found.size());
+        for (Runnable r : found) {
+            result.add(r instanceof Task ? ((Task) r).task : r);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    private void enter(Frame snapshot) {
+        Frame current = entered.get();
+        if (current != null && current.isEquivalentTo(snapshot)) {
+            reuses.increment();
+            return;
+        }
+        if (current != null) {
+            scope.exit();
+        }
+        scope.enterSnapshot(snapshot);
+        entered.set(snapshot);
+        reentries.increment();
+    }
+
+    private void idle() {
+        if (entered.get() != null) {
+            entered.set(null);
+            scope.exit();
+        }
+    }
+
+    private final class Task implements Runnable {
+
+        private final Frame snapshot;
+        private final Runnable task;
+
+        Task(Frame snapshot, Runnable task) {
+            this.snapshot = snapshot;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (snapshot == null) {
+                // Submitted from outside the scope, so run outside it
+                idle();
+            } else {
+                enter(snapshot);
+            }
+            scope.runTask(snapshot, task);
+        }
+    }
+
+    /**
+     * The pool's queue, which workers call when they want their next task -
+     * so it is where a worker which is about to wait can leave the scope.
+     */
+    private final class WorkQueue extends LinkedBlockingQueue<Runnable> {
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            Runnable result = poll();
+            if (result == null) {
+                idle();
+                result = super.take();
+            }
+            return result;
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            Runnable result = poll();
+            if (result == null) {
+                idle();
+                result = super.poll(timeout, unit);
+            }
+            return result;
+        }
+    }
+}
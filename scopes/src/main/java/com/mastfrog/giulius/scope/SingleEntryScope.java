@@ -37,12 +37,38 @@ import java.util.concurrent.Callable;
  */
 public class SingleEntryScope extends AbstractScope implements Scope {
 
-    private final ThreadLocal<Object[]> values = new ThreadLocal<>();
+    private final FrameLocal values = new FrameLocal();
+    // A cleared frame from the last entry, which holds no scope contents
+    private final FrameLocal spares = new FrameLocal();
+    private final QuietAutoClosable qac = this::exit;
 
     @Override
     protected List<Object> contents() {
-        Object[] result = values.get();
-        return result == null ? Collections.emptyList() : Arrays.asList(result);
+        Frame result = values.get();
+        return result == null ? Collections.emptyList() : Arrays.asList(result.flatten());
+    }
+
+    @Override
+    Frame snapshot() {
+        Frame result = values.get();
+        return result == null ? newFrame(Frame.EMPTY, null) : result.capture();
+    }
+
+    @Override
+    Frame currentFrame() {
+        return values.get();
+    }
+
+    @Override
+    boolean isCurrent(Frame snapshot) {
+        Frame current = values.get();
+        return current != null && current.isEquivalentTo(snapshot);
+    }
+
+    @Override
+    QuietAutoClosable enterSnapshot(Frame snapshot) {
+        checkNotInScope();
+        return push(Frame.install(snapshot, null));
     }
 
     public void run(Runnable toRun, Object... scopeContents) {
@@ -64,26 +90,47 @@ public class SingleEntryScope extends AbstractScope implements Scope {
     }
 
     protected QuietAutoClosable enter(Object... scopeContents) {
+        checkNotInScope();
+        return push(recycledFrame(spares.get(), null, scopeContents));
+    }
+
+    @Override
+    protected QuietAutoClosable enter(Object a) {
+        checkNotInScope();
+        return push(recycledFrame(spares.get(), null, a));
+    }
+
+    @Override
+    protected QuietAutoClosable enter(Object a, Object b) {
+        checkNotInScope();
+        return push(recycledFrame(spares.get(), null, a, b));
+    }
+
+    @Override
+    protected QuietAutoClosable enter(Object a, Object b, Object c) {
+        checkNotInScope();
+        return push(recycledFrame(spares.get(), null, a, b, c));
+    }
+
+    private void checkNotInScope() {
         if (values.get() != null) {
             throw new IllegalStateException("Already in scope " + this);
         }
-        values.set(scopeContents);
-        return new QuietAutoClosable() {
-            @Override
-            public void close() {
-                exit();
-            }
-        };
+    }
+
+    private QuietAutoClosable push(Frame frame) {
+        values.set(frame);
+        notifyEnter(frame);
+        return qac;
     }
 
     protected <T> T get(Class<T> type) {
-        Object[] contents = values.get();
-        for (int i = contents.length - 1; i >= 0; i--) {
-            if (type.isInstance(contents[i])) {
-                return type.cast(contents[i]);
-            }
-        }
-        return null;
+        return get(slotIfBound(type), type);
+    }
+
+    @Override
+    <T> T get(int slot, Class<T> type) {
+        return lookup(values.get(), slot, type);
     }
 
     @Override
@@ -92,9 +139,20 @@ public class SingleEntryScope extends AbstractScope implements Scope {
     }
 
     protected void exit() {
-        if (values.get() == null) {
+        Frame frame = values.get();
+        if (frame == null) {
             throw new IllegalStateException("Not in scope " + this);
         }
-        values.remove();
+        // Not remove() - the next entry would have to allocate a new
+        // ThreadLocal entry
+        values.set(null);
+        notifyExit(frame);
+        if (frame.recycle()) {
+            spares.set(frame);
+        } else if (spares.get() == frame) {
+            // Reused and then captured - a snapshot now, which must not be
+            // kept for the thread
+            spares.set(null);
+        }
     }
 }
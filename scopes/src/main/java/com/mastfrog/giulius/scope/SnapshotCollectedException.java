@@ -0,0 +1,52 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+/**
+ * Thrown when code wrapped with a soft or weak snapshot is run after some
+ * object the snapshot captured was garbage collected. The wrapped code is not
+ * run, rather than running it with part of what was in scope missing.
+ *
+ * @see SnapshotRetention
+ * @author Tim Boudreau
+ */
+public final class SnapshotCollectedException extends IllegalStateException {
+
+    private final Class<?> type;
+
+    SnapshotCollectedException(Class<?> type) {
+        super("Snapshot contents of type " + type.getName()
+                + " were garbage collected before the wrapped code ran");
+        this.type = type;
+    }
+
+    /**
+     * The type of the object which was collected.
+     *
+     * @return A type
+     */
+    public Class<?> collectedType() {
+        return type;
+    }
+}
@@ -0,0 +1,52 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+/**
+ * How strongly a snapshot taken to run code in a scope later holds on to the
+ * objects it captured. A wrapped runnable sitting in a queue, or a listener
+ * registered for the life of a connection, otherwise keeps everything that was
+ * in scope when it was created reachable until it is discarded.
+ *
+ * @see AbstractScope#wrapProjected(java.lang.Runnable, SnapshotRetention,
+ * java.lang.Class...)
+ * @author Tim Boudreau
+ */
+public enum SnapshotRetention {
+    /**
+     * Hold the captured objects normally - the default behavior of
+     * <code>wrap()</code>.
+     */
+    STRONG,
+    /**
+     * Hold the captured objects through soft references, so they survive
+     * until the JVM is short of memory.
+     */
+    SOFT,
+    /**
+     * Hold the captured objects through weak references, so they survive only
+     * as long as something else uses them.
+     */
+    WEAK;
+}
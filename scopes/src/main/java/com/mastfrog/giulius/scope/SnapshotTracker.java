@@ -0,0 +1,93 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts snapshots which are still reachable, and how many scope entries
+ * they keep reachable, by holding a phantom reference to each. Collected
+ * snapshots are discounted whenever another is tracked or the counts are read,
+ * so no thread is needed. Only created when snapshot tracking is enabled on a
+ * scope, since tracking costs an allocation and a hash insertion per
+ * snapshot.
+ *
+ * @author Tim Boudreau
+ */
+final class SnapshotTracker {
+
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    // The references themselves must stay reachable to be enqueued
+    private final Set<Tracked> tracked = ConcurrentHashMap.newKeySet();
+    private final LongAdder live = new LongAdder();
+    private final LongAdder retained = new LongAdder();
+
+    /**
+     * Count a snapshot until it is garbage collected.
+     *
+     * @param snapshot The snapshot, or whatever holds it
+     * @param entries The number of objects it keeps reachable
+     */
+    void track(Object snapshot, int entries) {
+        expunge();
+        live.increment();
+        retained.add(entries);
+        tracked.add(new Tracked(snapshot, entries, collected));
+    }
+
+    long live() {
+        expunge();
+        return live.sum();
+    }
+
+    long retained() {
+        expunge();
+        return retained.sum();
+    }
+
+    private void expunge() {
+        for (Reference<?> ref; (ref = collected.poll()) != null;) {
+            Tracked t = (Tracked) ref;
+            if (tracked.remove(t)) {
+                live.decrement();
+                retained.add(-t.entries);
+            }
+        }
+    }
+
+    private static final class Tracked extends PhantomReference<Object> {
+
+        final int entries;
+
+        Tracked(Object referent, int entries, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.entries = entries;
+        }
+    }
+}
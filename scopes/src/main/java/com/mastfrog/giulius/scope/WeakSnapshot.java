@@ -0,0 +1,127 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * A snapshot which holds the objects it captured through soft or weak
+ * references, and only turns them back into a frame when the code it was
+ * taken for runs - at which point, if any of them has been collected, it
+ * throws a SnapshotCollectedException instead of running it.
+ *
+ * @author Tim Boudreau
+ */
+final class WeakSnapshot {
+
+    private final AbstractScope scope;
+    private final Reference<?>[] contents;
+    private final Class<?>[] types;
+    private final ScopeOrigin origin;
+
+    WeakSnapshot(AbstractScope scope, Object[] contents, SnapshotRetention retention, ScopeOrigin origin) {
+        this.scope = scope;
+        this.contents = new Reference<?>[contents.length];
+        this.types = new Class<?>[contents.length];
+        this.origin = origin;
+        for (int i = 0; i < contents.length; i++) {
+            Object o = contents[i];
+            this.contents[i] = retention == SnapshotRetention.SOFT
+                    ? new SoftReference<>(o) : new WeakReference<>(o);
+            types[i] = LazyContent.typeOf(o);
+        }
+    }
+
+    int size() {
+        return contents.length;
+    }
+
+    /**
+     * Get a frame holding everything this snapshot captured.
+     *
+     * @return A frame
+     * @throws SnapshotCollectedException if anything was collected
+     */
+    Frame frame() {
+        Object[] resolved = new Object[contents.length];
+        for (int i = 0; i < resolved.length; i++) {
+            resolved[i] = contents[i].get();
+            if (resolved[i] == null) {
+                SnapshotCollectedException ex = new SnapshotCollectedException(types[i]);
+                if (origin != null) {
+                    ex.addSuppressed(origin);
+                }
+                throw ex;
+            }
+        }
+        Frame result = scope.newFrame(resolved, null);
+        return origin == null ? result : Frame.traced(result, origin);
+    }
+
+    void run(Runnable run) {
+        Frame frame = frame();
+        try {
+            scope.runIn(frame, run);
+        } catch (RuntimeException | Error e) {
+            frame.attachOrigin(e);
+            throw e;
+        }
+    }
+
+    <T> T call(Callable<T> call) throws Exception {
+        Frame frame = frame();
+        try {
+            return scope.callIn(frame, call);
+        } catch (Exception | Error e) {
+            frame.attachOrigin(e);
+            throw e;
+        }
+    }
+
+    <T> T get(Supplier<T> supplier) {
+        Frame frame = frame();
+        try {
+            return scope.getIn(frame, supplier);
+        } catch (RuntimeException | Error e) {
+            frame.attachOrigin(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("WeakSnapshot(");
+        for (int i = 0; i < contents.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(contents[i].get());
+        }
+        return sb.append(')').toString();
+    }
+}
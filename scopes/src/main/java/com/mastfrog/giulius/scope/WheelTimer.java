@@ -0,0 +1,431 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed-wheel timer, for scheduling large numbers of short timeouts
+ * cheaply. Scheduling a task is a lock-free enqueue, and cancelling one is
+ * O(1) - unlike ScheduledThreadPoolExecutor, there is no heap to maintain. The
+ * tradeoff is precision: tasks fire on the first tick at or after their
+ * deadline, so they may run up to one tick late.
+ * <p/>
+ * A single daemon thread advances the wheel; it alone touches the buckets.
+ * Expired tasks run on the dispatch executor if there is one, or directly on
+ * the timer thread if not (fine for cheap work like failing a future).
+ *
+ * @author Tim Boudreau
+ */
+final class WheelTimer extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+    private static final AtomicIntegerFieldUpdater<WheelTimer> STATE
+            = AtomicIntegerFieldUpdater.newUpdater(WheelTimer.class, "state");
+    private final AbstractScope scope;
+    private final Executor dispatch;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout<?>> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout<?>> cancelled = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private final long start = System.nanoTime();
+    private final Thread ticker;
+    private volatile int state;
+    private volatile List<Runnable> unrun = Collections.emptyList();
+    // Only touched by the timer thread
+    private long tick;
+    private int live;
+    private boolean stoppedFromTimerThread;
+
+    WheelTimer(AbstractScope scope, long tickDuration, TimeUnit unit, int wheelSize, Executor dispatch) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be > 0: " + tickDuration);
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("Bad wheel size " + wheelSize);
+        }
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.scope = scope;
+        this.dispatch = dispatch;
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        this.mask = size - 1;
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        ticker = new ScopedThread(this::loop, "scoped-wheel-timer-" + IDS.incrementAndGet());
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private long now() {
+        return System.nanoTime() - start;
+    }
+
+    private long deadline(long delay, TimeUnit unit) {
+        return now() + Math.max(0, unit.toNanos(delay));
+    }
+
+    private <T> Timeout<T> enqueue(Timeout<T> timeout) {
+        if (state != RUNNING) {
+            throw new RejectedExecutionException("Shut down");
+        }
+        pending.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return enqueue(new Timeout<>(Executors.callable(scope.wrapTask(command, true)), deadline(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return enqueue(new Timeout<>(scope.wrapTask(callable), deadline(delay, unit), 0));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be > 0: " + period);
+        }
+        return enqueue(new Timeout<>(Executors.callable(scope.wrapTask(command, true)),
+                deadline(initialDelay, unit), Math.max(1, unit.toNanos(period))));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Delay must be > 0: " + delay);
+        }
+        return enqueue(new Timeout<>(Executors.callable(scope.wrapTask(command, true)),
+                deadline(initialDelay, unit), -Math.max(1, unit.toNanos(delay))));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, NANOSECONDS);
+    }
+
+    @Override
+    public void shutdown() {
+        // Must not overwrite STOP from a concurrent shutdownNow()
+        if (STATE.compareAndSet(this, RUNNING, SHUTDOWN)) {
+            LockSupport.unpark(ticker);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        state = STOP;
+        if (Thread.currentThread() == ticker) {
+            stoppedFromTimerThread = true;
+            return Collections.emptyList();
+        }
+        LockSupport.unpark(ticker);
+        try {
+            ticker.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return unrun;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private void loop() {
+        boolean periodicsCancelled = false;
+        try {
+            for (;;) {
+                long tickDeadline = tickNanos * (tick + 1);
+                if (!awaitTick(tickDeadline)) {
+                    break;
+                }
+                processCancelled();
+                transferPending();
+                int st = state;
+                if (st != RUNNING && !periodicsCancelled) {
+                    for (Bucket b : wheel) {
+                        live -= b.cancelPeriodic();
+                    }
+                    periodicsCancelled = true;
+                }
+                wheel[(int) (tick & mask)].expire();
+                tick++;
+                if (st == STOP || (st == SHUTDOWN && live == 0 && pending.isEmpty())) {
+                    break;
+                }
+            }
+        } finally {
+            List<Runnable> remaining = new ArrayList<>();
+            for (Bucket b : wheel) {
+                b.drainTo(remaining);
+            }
+            for (Timeout<?> t; (t = pending.poll()) != null;) {
+                if (!t.isDone()) {
+                    remaining.add(t);
+                }
+            }
+            if (state == STOP && !stoppedFromTimerThread) {
+                unrun = remaining;
+            } else {
+                // Orphaned by a shutdown which raced with scheduling, or
+                // shutdownNow() from a task - nobody can hand these back
+                for (Runnable r : remaining) {
+                    ((Timeout<?>) r).cancel(false);
+                }
+            }
+            terminated.countDown();
+        }
+    }
+
+    private boolean awaitTick(long tickDeadline) {
+        for (;;) {
+            if (state == STOP) {
+                return false;
+            }
+            long remaining = tickDeadline - now();
+            if (remaining <= 0) {
+                return true;
+            }
+            LockSupport.parkNanos(this, remaining);
+            // Interrupts from tasks run on this thread are meaningless here
+            Thread.interrupted();
+        }
+    }
+
+    private void processCancelled() {
+        for (Timeout<?> t; (t = cancelled.poll()) != null;) {
+            if (t.bucket != null) {
+                t.bucket.remove(t);
+                live--;
+            }
+        }
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout<?> t = pending.poll();
+            if (t == null) {
+                break;
+            }
+            if (t.isCancelled()) {
+                continue;
+            } else if (t.isPeriodic() && state != RUNNING) {
+                t.cancel(false);
+                continue;
+            }
+            long ticks = t.deadline / tickNanos;
+            t.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (Math.max(ticks, tick) & mask)].add(t);
+            live++;
+        }
+    }
+
+    private final class Bucket {
+
+        private Timeout<?> head;
+        private Timeout<?> tail;
+
+        void add(Timeout<?> t) {
+            t.bucket = this;
+            if (head == null) {
+                head = tail = t;
+            } else {
+                tail.next = t;
+                t.prev = tail;
+                tail = t;
+            }
+        }
+
+        Timeout<?> remove(Timeout<?> t) {
+            Timeout<?> next = t.next;
+            if (t.prev != null) {
+                t.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = t.prev;
+            }
+            if (t == head) {
+                head = next;
+            }
+            if (t == tail) {
+                tail = t.prev;
+            }
+            t.prev = t.next = null;
+            t.bucket = null;
+            return next;
+        }
+
+        void expire() {
+            for (Timeout<?> t = head; t != null;) {
+                if (t.rounds <= 0) {
+                    Timeout<?> expired = t;
+                    t = remove(t);
+                    live--;
+                    expired.fire();
+                } else {
+                    t.rounds--;
+                    t = t.next;
+                }
+            }
+        }
+
+        int cancelPeriodic() {
+            int count = 0;
+            for (Timeout<?> t = head; t != null;) {
+                if (t.isPeriodic()) {
+                    Timeout<?> periodic = t;
+                    t = remove(t);
+                    periodic.cancel(false);
+                    count++;
+                } else {
+                    t = t.next;
+                }
+            }
+            return count;
+        }
+
+        void drainTo(List<? super Runnable> into) {
+            for (Timeout<?> t = head; t != null;) {
+                Timeout<?> curr = t;
+                t = remove(t);
+                if (!curr.isDone()) {
+                    into.add(curr);
+                }
+            }
+        }
+    }
+
+    private final class Timeout<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+        // Nanoseconds since the timer started; positive periods are fixed
+        // rate, negative ones fixed delay
+        private volatile long deadline;
+        private final long period;
+        // Only touched by the timer thread
+        private long rounds;
+        private Bucket bucket;
+        private Timeout<?> prev;
+        private Timeout<?> next;
+
+        Timeout(Callable<V> callable, long deadline, long period) {
+            super(callable);
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        void fire() {
+            if (dispatch == null) {
+                run();
+            } else {
+                try {
+                    dispatch.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    setException(ex);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            if (period == 0) {
+                super.run();
+            } else if (runAndReset()) {
+                deadline = period > 0 ? deadline + period : now() - period;
+                if (state == RUNNING) {
+                    pending.add(this);
+                } else {
+                    cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean result = super.cancel(mayInterruptIfRunning);
+            if (result) {
+                cancelled.add(this);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - now(), NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return o == this ? 0 : Long.compare(getDelay(NANOSECONDS), o.getDelay(NANOSECONDS));
+        }
+    }
+}
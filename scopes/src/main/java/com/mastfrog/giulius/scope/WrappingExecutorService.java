@@ -0,0 +1,141 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Base class for wrappers around an ExecutorService which wrap each task so it
+ * runs with what was in scope when it was submitted; subclasses supply the
+ * wrapping for a single scope or a ScopeSet.
+ *
+ * @author Tim Boudreau
+ */
+abstract class WrappingExecutorService implements ExecutorService {
+
+    private final ExecutorService executor;
+
+    WrappingExecutorService(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    abstract Runnable wrapTask(Runnable task, boolean failFast);
+
+    abstract <T> Callable<T> wrapTask(Callable<T> task);
+
+    abstract <T> Future<T> submitTo(ExecutorService executor, Callable<T> task);
+
+    /**
+     * Get the task a wrapper returned by <code>wrapTask()</code> delegates
+     * to, or the passed task if it is not one.
+     */
+    abstract Runnable unwrap(Runnable task);
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> found = executor.shutdownNow();
+        List<Runnable> result = new ArrayList<>(found.size());
+        for (Runnable r : found) {
+            result.add(unwrap(r));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return submitTo(executor, wrapTask(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        return submitTo(executor, Executors.callable(wrapTask(task, true), result));
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return submitTo(executor, Executors.callable(wrapTask(task, true)));
+    }
+
+    <T> List<Callable<T>> wrap(Collection<? extends Callable<T>> tasks) {
+        List<Callable<T>> callables = new ArrayList<>(tasks.size());
+        for (Callable<T> c : tasks) {
+            callables.add(wrapTask(c));
+        }
+        return callables;
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return executor.invokeAll(wrap(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.invokeAll(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        return executor.invokeAny(wrap(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return executor.invokeAny(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(wrapTask(command, false));
+    }
+}
@@ -0,0 +1,145 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AffinityThreadPoolTest {
+
+    @Test
+    public void testAffinityThreadPool() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Provider<String> strs = re.provider(String.class, () -> null);
+        AffinityThreadPool pool = (AffinityThreadPool) re.newAffinityThreadPool(4);
+        try {
+            int requests = 6;
+            int perRequest = 50;
+            CountDownLatch done = new CountDownLatch(requests * perRequest);
+            AtomicInteger wrongScope = new AtomicInteger();
+            for (int i = 0; i < requests; i++) {
+                String req = "req-" + i;
+                try ( QuietAutoClosable qac = re.enter(req)) {
+                    for (int j = 0; j < perRequest; j++) {
+                        // Nested entries still belong to the same request
+                        try ( QuietAutoClosable qac2 = re.enter(j)) {
+                            pool.execute(() -> {
+                                if (!req.equals(strs.get())) {
+                                    wrongScope.incrementAndGet();
+                                }
+                                done.countDown();
+                            });
+                        }
+                    }
+                }
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, wrongScope.get());
+            assertEquals(requests * perRequest, pool.reentries() + pool.reuses());
+
+            // Everything from one request, and each task needs all four
+            // threads running at once - only possible if idle workers steal
+            CyclicBarrier barrier = new CyclicBarrier(4);
+            List<Future<?>> futures = new ArrayList<>();
+            try ( QuietAutoClosable qac = re.enter("big")) {
+                for (int i = 0; i < 8; i++) {
+                    futures.add(pool.submit(() -> {
+                        barrier.await(10, TimeUnit.SECONDS);
+                        return strs.get();
+                    }));
+                }
+            }
+            for (Future<?> f : futures) {
+                assertEquals("big", f.get(10, TimeUnit.SECONDS));
+            }
+            assertTrue(pool.steals() > 0);
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTasksAcceptedDuringShutdownRun() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        for (int i = 0; i < 50; i++) {
+            ExecutorService pool = re.newAffinityThreadPool(2);
+            AtomicInteger accepted = new AtomicInteger();
+            AtomicInteger ran = new AtomicInteger();
+            CountDownLatch submitting = new CountDownLatch(1);
+            Thread submitter = new Thread(() -> {
+                try ( QuietAutoClosable qac = re.enter("req")) {
+                    for (;;) {
+                        pool.execute(ran::incrementAndGet);
+                        accepted.incrementAndGet();
+                        submitting.countDown();
+                    }
+                } catch (RejectedExecutionException ex) {
+                    // done
+                }
+            });
+            submitter.start();
+            assertTrue(submitting.await(10, TimeUnit.SECONDS));
+            pool.shutdown();
+            submitter.join(10000);
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(accepted.get(), ran.get());
+        }
+    }
+
+    @Test
+    public void testTasksSubmittedOutOfScopeRunOutOfScope() throws Exception {
+        SingleEntryScope single = new SingleEntryScope();
+        Provider<String> strs = single.provider(String.class, () -> null);
+        ExecutorService exe = single.newAffinityThreadPool(1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Boolean> first;
+            try ( QuietAutoClosable qac = single.enter("a")) {
+                first = exe.submit(() -> release.await(10, TimeUnit.SECONDS));
+            }
+            // Runs on the same worker, straight after a task which was in scope
+            Future<String> second = exe.submit(() -> {
+                assertFalse(single.inScope());
+                return single.run(strs::get, "b");
+            });
+            release.countDown();
+            assertTrue(first.get(10, TimeUnit.SECONDS));
+            assertEquals("b", second.get(10, TimeUnit.SECONDS));
+        } finally {
+            exe.shutdown();
+        }
+    }
+}
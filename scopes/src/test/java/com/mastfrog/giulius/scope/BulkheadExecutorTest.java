@@ -0,0 +1,119 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BulkheadExecutorTest {
+
+    @Test
+    public void testBulkheadIsolatesKeys() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        BulkheadExecutor exe = re.newBulkheadExecutor(Tenant.class, 4, 2, 1);
+        try {
+            Tenant noisy = new Tenant("noisy");
+            Tenant quiet = new Tenant("quiet");
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            List<Future<String>> noisyTasks = new ArrayList<>();
+            try ( QuietAutoClosable qac = re.enter(noisy, "request")) {
+                noisyTasks.add(exe.submit(() -> {
+                    started.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                    return re.get(Tenant.class).name;
+                }));
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+                // Limited to one at a time, so these wait even though
+                // threads are free
+                noisyTasks.add(exe.submit(() -> re.get(Tenant.class).name));
+                noisyTasks.add(exe.submit(() -> re.get(Tenant.class).name));
+                try {
+                    exe.submit(() -> "too many");
+                    fail("Full queue should reject");
+                } catch (RejectedExecutionException ex) {
+                    // ok
+                }
+            }
+            assertEquals(2, exe.queueDepth(noisy));
+            assertEquals(1, exe.running(noisy));
+            assertEquals(1, exe.rejectedCount());
+            try ( QuietAutoClosable qac = re.enter(quiet)) {
+                assertEquals("quiet", exe.submit(() -> re.get(Tenant.class).name)
+                        .get(10, TimeUnit.SECONDS));
+            }
+            assertEquals("unkeyed", exe.submit(() -> "unkeyed").get(10, TimeUnit.SECONDS));
+            assertEquals(2, exe.queueDepth(noisy));
+            release.countDown();
+            for (Future<String> f : noisyTasks) {
+                assertEquals("noisy", f.get(10, TimeUnit.SECONDS));
+            }
+            for (int i = 0; i < 100 && !exe.queueDepths().isEmpty(); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(exe.queueDepths().isEmpty());
+        } finally {
+            exe.shutdown();
+        }
+        assertTrue(exe.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTasksSubmittedOutOfScopeRunOutOfScope() throws Exception {
+        SingleEntryScope single = new SingleEntryScope();
+        Provider<String> strs = single.provider(String.class, () -> null);
+        BulkheadExecutor exe = single.newBulkheadExecutor(Tenant.class, 1, 10, 1);
+        try {
+            Future<String> f = exe.submit(() -> {
+                assertFalse(single.inScope());
+                return single.run(strs::get, "b");
+            });
+            assertEquals("b", f.get(10, TimeUnit.SECONDS));
+        } finally {
+            exe.shutdown();
+        }
+    }
+
+    static final class Tenant {
+
+        final String name;
+
+        Tenant(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
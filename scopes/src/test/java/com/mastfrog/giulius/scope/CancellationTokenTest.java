@@ -0,0 +1,180 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CancellationTokenTest {
+
+    @Test
+    public void testCancellationPropagatesToSpawnedTasks() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ExecutorService exe = re.wrapThreadPool(Executors.newSingleThreadExecutor());
+        ExecutorService workers = re.newThreadPool(1);
+        try {
+            CancellationToken token = new CancellationToken();
+            CountDownLatch started = new CountDownLatch(2);
+            AtomicInteger interrupted = new AtomicInteger();
+            AtomicInteger ran = new AtomicInteger();
+            Runnable blocker = () -> {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException ex) {
+                    interrupted.incrementAndGet();
+                }
+            };
+            Future<?> queued;
+            Future<?> queuedOnWorker;
+            Runnable callback;
+            CancellationToken nested = new CancellationToken();
+            Runnable nestedCallback;
+            try ( QuietAutoClosable qac = re.enterCancellable(token, CancelPolicy.INTERRUPT_RUNNING, "request")) {
+                exe.submit(blocker);
+                workers.submit(blocker);
+                queued = exe.submit(ran::incrementAndGet);
+                queuedOnWorker = workers.submit(ran::incrementAndGet);
+                callback = re.wrap((Runnable) ran::incrementAndGet);
+                try ( QuietAutoClosable qac2 = re.enterCancellable(nested, CancelPolicy.NONE)) {
+                    nestedCallback = re.wrap((Runnable) ran::incrementAndGet);
+                }
+                assertFalse(nested.isCancelled());
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            }
+            assertTrue(token.isCancelled());
+            assertTrue("Nested token should be cancelled with its owner", nested.isCancelled());
+            try {
+                queued.get(10, TimeUnit.SECONDS);
+                fail("Queued task should not have run");
+            } catch (CancellationException ex) {
+                // ok
+            }
+            try {
+                queuedOnWorker.get(10, TimeUnit.SECONDS);
+                fail("Queued task should not have run");
+            } catch (CancellationException ex) {
+                // ok
+            }
+            try {
+                callback.run();
+                fail("Wrapped callback should not run");
+            } catch (CancellationException ex) {
+                // ok
+            }
+            try {
+                nestedCallback.run();
+                fail("Wrapped callback should not run");
+            } catch (CancellationException ex) {
+                // ok
+            }
+            exe.shutdown();
+            workers.shutdown();
+            assertTrue(exe.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(2, interrupted.get());
+            assertEquals(0, ran.get());
+        } finally {
+            exe.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNestedTokensAreReleasedOnExit() {
+        ReentrantScope re = new ReentrantScope();
+        CancellationToken token = new CancellationToken();
+        try ( QuietAutoClosable qac = re.enterCancellable(token, CancelPolicy.NONE)) {
+            for (int i = 0; i < 100; i++) {
+                CancelPolicy policy = i % 2 == 0 ? CancelPolicy.NONE : CancelPolicy.CANCEL_QUEUED;
+                try ( QuietAutoClosable qac2 = re.enterCancellable(new CancellationToken(), policy)) {
+                    assertEquals(1, token.childCount());
+                }
+            }
+            assertEquals(0, token.childCount());
+        }
+    }
+
+    @Test
+    public void testCancellationReleasesCallersWaitingOnQueuedTasks() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        assertQueuedTasksCancelled(re, re.wrapThreadPool(Executors.newSingleThreadExecutor()));
+        assertQueuedTasksCancelled(re, re.newThreadPool(1));
+        assertQueuedTasksCancelled(re, re.newAffinityThreadPool(1));
+    }
+
+    private void assertQueuedTasksCancelled(ReentrantScope re, ExecutorService exe) throws Exception {
+        try {
+            CancellationToken token = new CancellationToken();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch waiterReleased = new CountDownLatch(1);
+            AtomicInteger ran = new AtomicInteger();
+            Future<?> running;
+            Future<?> queued;
+            try ( QuietAutoClosable qac = re.enterCancellable(token, CancelPolicy.CANCEL_QUEUED)) {
+                exe.submit(ran::incrementAndGet).get(10, TimeUnit.SECONDS);
+                assertEquals("Finished tasks should not stay registered", 0, token.queuedCount());
+                running = exe.submit(() -> {
+                    started.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                    return null;
+                });
+                queued = exe.submit(ran::incrementAndGet);
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+                assertEquals(1, token.queuedCount());
+                Thread waiter = new Thread(() -> {
+                    try {
+                        queued.get();
+                    } catch (CancellationException ex) {
+                        waiterReleased.countDown();
+                    } catch (InterruptedException | ExecutionException ex) {
+                        // fail below
+                    }
+                });
+                waiter.setDaemon(true);
+                waiter.start();
+            }
+            assertTrue("Caller blocked on a queued task should be released while "
+                    + "the pool is still busy", waiterReleased.await(10, TimeUnit.SECONDS));
+            assertTrue(queued.isCancelled());
+            assertFalse(running.isDone());
+            assertEquals(0, token.queuedCount());
+            release.countDown();
+            running.get(10, TimeUnit.SECONDS);
+            assertEquals(1, ran.get());
+        } finally {
+            exe.shutdown();
+        }
+    }
+}
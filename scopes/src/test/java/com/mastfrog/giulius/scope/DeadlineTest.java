@@ -0,0 +1,98 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DeadlineTest {
+
+    @Test
+    public void testDeadlinesShedExpiredTasks() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ExecutorService wrapped = re.wrapThreadPool(Executors.newSingleThreadExecutor());
+        ExecutorService workers = re.newThreadPool(1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            // Occupy both pools' only thread until the deadline has passed
+            wrapped.submit(() -> release.await(10, TimeUnit.SECONDS));
+            workers.submit(() -> release.await(10, TimeUnit.SECONDS));
+            AtomicInteger ran = new AtomicInteger();
+            Future<String> failed;
+            Future<String> cancelled;
+            Future<String> inTime;
+            Instant deadline = Instant.now().plusMillis(100);
+            Deadline current;
+            try ( QuietAutoClosable qac = re.enterWithDeadline(deadline, "request")) {
+                current = re.deadline();
+                assertNotNull(current);
+                assertEquals(deadline, current.instant());
+                try ( QuietAutoClosable qac2 = re.enterWithDeadline(deadline.plusSeconds(60))) {
+                    // A nested entry cannot extend it
+                    assertSame(current, re.deadline());
+                }
+                failed = wrapped.submit(() -> re.get(String.class));
+                cancelled = workers.submit(() -> re.get(String.class));
+                wrapped.execute(ran::incrementAndGet);
+                workers.execute(ran::incrementAndGet);
+            }
+            assertNull(re.deadline());
+            try ( QuietAutoClosable qac = re.enterWithDeadline(Instant.now().plusSeconds(60), "later")) {
+                inTime = wrapped.submit(() -> re.get(String.class));
+            }
+            while (!current.isExpired()) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            try {
+                failed.get(10, TimeUnit.SECONDS);
+                fail("Expired task should not have run");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof DeadlineExceededException);
+            }
+            try {
+                cancelled.get(10, TimeUnit.SECONDS);
+                fail("Expired task should not have run");
+            } catch (CancellationException ex) {
+                // ok
+            }
+            assertEquals("later", inTime.get(10, TimeUnit.SECONDS));
+            assertEquals(0, ran.get());
+            assertEquals(4, re.shedCount());
+        } finally {
+            wrapped.shutdown();
+            workers.shutdown();
+        }
+    }
+}
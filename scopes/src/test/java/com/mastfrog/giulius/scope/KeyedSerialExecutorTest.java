@@ -0,0 +1,271 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void testSerialExecutorOrdersTasksPerKey() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        ExecutorService exe = re.newSerialExecutor(Integer.class, pool);
+        try {
+            int keys = 4;
+            int perKey = 500;
+            List<List<Integer>> order = new ArrayList<>();
+            AtomicInteger[] active = new AtomicInteger[keys];
+            AtomicInteger overlaps = new AtomicInteger();
+            for (int i = 0; i < keys; i++) {
+                order.add(Collections.synchronizedList(new ArrayList<>()));
+                active[i] = new AtomicInteger();
+            }
+            // Different keys run in parallel - these two wait for each other
+            CountDownLatch a = new CountDownLatch(1);
+            CountDownLatch b = new CountDownLatch(1);
+            Future<Boolean> first;
+            Future<Boolean> second;
+            try ( QuietAutoClosable qac = re.enter(0)) {
+                first = exe.submit(() -> {
+                    a.countDown();
+                    return b.await(10, TimeUnit.SECONDS);
+                });
+            }
+            try ( QuietAutoClosable qac = re.enter(1)) {
+                second = exe.submit(() -> {
+                    b.countDown();
+                    return a.await(10, TimeUnit.SECONDS);
+                });
+            }
+            assertTrue(first.get(10, TimeUnit.SECONDS));
+            assertTrue(second.get(10, TimeUnit.SECONDS));
+            Thread[] submitters = new Thread[keys];
+            for (int i = 0; i < keys; i++) {
+                int key = i;
+                submitters[i] = new Thread(() -> {
+                    for (int j = 0; j < perKey; j++) {
+                        int seq = j;
+                        try ( QuietAutoClosable qac = re.enter(key)) {
+                            exe.execute(() -> {
+                                if (active[key].incrementAndGet() != 1) {
+                                    overlaps.incrementAndGet();
+                                }
+                                if (Integer.valueOf(key).equals(re.get(Integer.class))) {
+                                    order.get(key).add(seq);
+                                }
+                                active[key].decrementAndGet();
+                            });
+                        }
+                    }
+                });
+            }
+            for (Thread t : submitters) {
+                t.start();
+            }
+            for (Thread t : submitters) {
+                t.join(10000);
+            }
+            exe.shutdown();
+            assertTrue(exe.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get());
+            for (int i = 0; i < keys; i++) {
+                List<Integer> ran = order.get(i);
+                assertEquals(perKey, ran.size());
+                for (int j = 0; j < perKey; j++) {
+                    assertEquals(j, (int) ran.get(j));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentSubmittersToOneKey() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        AtomicInteger dispatches = new AtomicInteger();
+        Executor counting = r -> {
+            dispatches.incrementAndGet();
+            pool.execute(r);
+        };
+        ExecutorService exe = re.newSerialExecutor(Integer.class, counting);
+        try {
+            // A drainer hands its thread back after each batch of 32
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger ran = new AtomicInteger();
+            Future<?> last;
+            try ( QuietAutoClosable qac = re.enter(0)) {
+                exe.execute(() -> {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        // fall through
+                    }
+                    ran.incrementAndGet();
+                });
+                for (int i = 0; i < 63; i++) {
+                    exe.execute(ran::incrementAndGet);
+                }
+                last = exe.submit(ran::incrementAndGet);
+            }
+            release.countDown();
+            last.get(10, TimeUnit.SECONDS);
+            assertEquals(65, ran.get());
+            assertEquals(3, dispatches.get());
+
+            int threads = 6;
+            int perThread = 2000;
+            AtomicInteger active = new AtomicInteger();
+            AtomicInteger overlaps = new AtomicInteger();
+            CountDownLatch go = new CountDownLatch(1);
+            Thread[] submitters = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                submitters[i] = new Thread(() -> {
+                    try {
+                        go.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < perThread; j++) {
+                        try ( QuietAutoClosable qac = re.enter(1)) {
+                            exe.execute(() -> {
+                                if (active.incrementAndGet() != 1) {
+                                    overlaps.incrementAndGet();
+                                }
+                                ran.incrementAndGet();
+                                active.decrementAndGet();
+                            });
+                        }
+                    }
+                });
+                submitters[i].start();
+            }
+            go.countDown();
+            for (Thread t : submitters) {
+                t.join(10000);
+            }
+            exe.shutdown();
+            assertTrue(exe.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get());
+            assertEquals(65 + threads * perThread, ran.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectionByThePoolDiscardsTasks() throws Exception {
+        SingleEntryScope single = new SingleEntryScope();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        ExecutorService exe = single.newSerialExecutor(Integer.class, pool);
+        AtomicInteger ran = new AtomicInteger();
+        try ( QuietAutoClosable qac = single.enter(1)) {
+            exe.execute(ran::incrementAndGet);
+            fail("Should have been rejected");
+        } catch (RejectedExecutionException ex) {
+            // ok - and not "Already in scope" from running it here
+        }
+        exe.shutdown();
+        assertTrue(exe.toString(), exe.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void testTasksSubmittedOutOfScopeRunOutOfScope() throws Exception {
+        SingleEntryScope single = new SingleEntryScope();
+        Provider<String> strs = single.provider(String.class, () -> null);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        ExecutorService exe = single.newSerialExecutor(Integer.class, pool);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Boolean> first;
+            try ( QuietAutoClosable qac = single.enter("a")) {
+                first = exe.submit(() -> release.await(10, TimeUnit.SECONDS));
+            }
+            // Drained in the same batch as a task which was in scope
+            Future<String> second = exe.submit(() -> {
+                assertFalse(single.inScope());
+                return single.run(strs::get, "b");
+            });
+            release.countDown();
+            assertTrue(first.get(10, TimeUnit.SECONDS));
+            assertEquals("b", second.get(10, TimeUnit.SECONDS));
+        } finally {
+            exe.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancellationInterruptDoesNotLeakToTheNextTask() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        ExecutorService exe = re.newSerialExecutor(Integer.class, pool);
+        try {
+            CancellationToken token = new CancellationToken();
+            CountDownLatch started = new CountDownLatch(1);
+            Future<Boolean> cancelled;
+            Future<Boolean> next;
+            try ( QuietAutoClosable qac = re.enterCancellable(token, CancelPolicy.INTERRUPT_RUNNING, 1)) {
+                // Notices the interrupt but leaves the flag set
+                cancelled = exe.submit(() -> {
+                    started.countDown();
+                    long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                    while (!Thread.currentThread().isInterrupted() && System.nanoTime() < until) {
+                        Thread.yield();
+                    }
+                    return Thread.currentThread().isInterrupted();
+                });
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            }
+            // Same key, so it follows in the same batch - and nobody has
+            // cancelled its token
+            try ( QuietAutoClosable qac = re.enter(1)) {
+                next = exe.submit(() -> Thread.currentThread().isInterrupted());
+            }
+            assertTrue("Should have been interrupted", cancelled.get(10, TimeUnit.SECONDS));
+            assertFalse("Interrupt leaked into the next task", next.get(10, TimeUnit.SECONDS));
+        } finally {
+            exe.shutdown();
+            pool.shutdown();
+        }
+    }
+}
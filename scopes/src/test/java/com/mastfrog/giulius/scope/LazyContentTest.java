@@ -0,0 +1,63 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LazyContentTest {
+
+    @Test
+    public void testLazyContent() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Provider<String> strs = re.provider(String.class, () -> null);
+        Provider<Integer> ints = re.provider(Integer.class, () -> null);
+        AtomicInteger stringsMade = new AtomicInteger();
+        AtomicInteger intsMade = new AtomicInteger();
+        Callable<String> wrapped;
+        LazyContent<Integer> lazyInt = LazyContent.of(Integer.class, () -> 40 + intsMade.incrementAndGet());
+        try ( QuietAutoClosable qac = re.enterLazy(String.class, () -> "made-" + stringsMade.incrementAndGet())) {
+            try ( QuietAutoClosable qac2 = re.enter(lazyInt, "ignored-later")) {
+                assertEquals("ignored-later", strs.get());
+            }
+            assertEquals(0, stringsMade.get());
+            try ( QuietAutoClosable qac2 = re.enter(lazyInt)) {
+                assertFalse(lazyInt.isComputed());
+                wrapped = re.wrap(() -> strs.get() + ints.get());
+            }
+            assertEquals(0, stringsMade.get());
+            assertEquals("made-1", strs.get());
+            assertEquals("made-1", strs.get());
+        }
+        assertEquals("made-141", wrapped.call());
+        assertEquals("made-141", wrapped.call());
+        assertEquals(1, stringsMade.get());
+        assertEquals(1, intsMade.get());
+        assertTrue(lazyInt.isComputed());
+    }
+}
@@ -30,13 +30,20 @@ import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
 import com.mastfrog.function.misc.QuietAutoClosable;
 import com.mastfrog.function.state.Bool;
 import com.mastfrog.function.throwing.ThrowingFunction;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -159,6 +166,258 @@ public class ReentrantScopeTest {
         assertTrue("Wrapped BiConsumer did not run", biConsumerRan.getAsBoolean());
     }
 
+    @Test
+    public void testSnapshotsAreUnaffectedByLaterEntries() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Provider<Integer> ints = re.provider(Integer.class, () -> null);
+        Provider<String> strs = re.provider(String.class, () -> null);
+        ExecutorService svc = re.wrapThreadPool(Executors.newSingleThreadExecutor());
+        try {
+            Callable<String> outer;
+            Callable<String> inner;
+            try ( QuietAutoClosable a = re.enter(1, "one")) {
+                outer = re.wrap(() -> strs.get() + ints.get());
+                try ( QuietAutoClosable b = re.enter(2)) {
+                    inner = re.wrap(() -> strs.get() + ints.get());
+                    assertEquals("one2", svc.submit(inner).get());
+                    assertEquals("one1", svc.submit(outer).get());
+                }
+                try ( QuietAutoClosable b = re.enter("three")) {
+                    // Already in scope - the snapshot goes on top of what is here
+                    assertEquals("one2", inner.call());
+                    assertEquals("three", strs.get());
+                }
+                assertEquals("one", strs.get());
+                assertEquals(Integer.valueOf(1), ints.get());
+            }
+            assertFalse(re.inScope());
+            assertEquals("one1", outer.call());
+            assertEquals("one2", inner.call());
+            assertFalse(re.inScope());
+            assertEquals("nullnull", svc.submit(() -> strs.get() + ints.get()).get());
+        } finally {
+            svc.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testLookupBySlot() {
+        ReentrantScope re = new ReentrantScope();
+        Provider<CharSequence> chars = re.provider(CharSequence.class, () -> null);
+        Provider<StringBuilder> sbs = re.provider(StringBuilder.class, () -> null);
+        StringBuilder sb = new StringBuilder("a");
+        try ( QuietAutoClosable a = re.enter(sb, 1)) {
+            assertSame(sb, chars.get());
+            try ( QuietAutoClosable b = re.enter("b", "c")) {
+                assertEquals("c", chars.get());
+                assertSame(sb, sbs.get());
+                // Bound after the frames on this thread were created
+                Provider<Comparable> comparables = re.provider(Comparable.class, () -> null);
+                assertEquals("c", comparables.get());
+                try ( QuietAutoClosable c = re.enter(2)) {
+                    assertEquals(Integer.valueOf(2), comparables.get());
+                    assertEquals("c", chars.get());
+                }
+                assertEquals("c", comparables.get());
+                assertTrue(re.contains(Integer.class));
+            }
+            assertSame(sb, chars.get());
+            assertNull(re.get(String.class));
+        }
+        assertNull(chars.get());
+    }
+
+    @Test
+    public void testResolutionCache() {
+        ReentrantScope re = new ReentrantScope();
+        re.setResolutionCacheEnabled(true);
+        try ( QuietAutoClosable a = re.enter("a", 1)) {
+            assertEquals("a", re.get(CharSequence.class));
+            assertEquals("a", re.get(CharSequence.class));
+            assertNull(re.get(StringBuilder.class));
+            assertNull(re.get(StringBuilder.class));
+            assertEquals(2, re.resolutionCacheMisses());
+            assertEquals(2, re.resolutionCacheHits());
+            StringBuilder sb = new StringBuilder();
+            try ( QuietAutoClosable b = re.enter(sb)) {
+                assertSame(sb, re.get(CharSequence.class));
+                assertSame(sb, re.get(StringBuilder.class));
+                assertEquals(4, re.resolutionCacheMisses());
+            }
+            assertEquals("a", re.get(CharSequence.class));
+            assertNull(re.get(StringBuilder.class));
+            assertEquals(4, re.resolutionCacheMisses());
+            assertEquals(4, re.resolutionCacheHits());
+        }
+        re.setResolutionCacheEnabled(false);
+        try ( QuietAutoClosable a = re.enter("b")) {
+            assertEquals("b", re.get(CharSequence.class));
+        }
+        assertEquals(4, re.resolutionCacheMisses());
+        assertEquals(4, re.resolutionCacheHits());
+    }
+
+    @Test
+    public void testVirtualThreadExecutor() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Provider<String> strs = re.provider(String.class, () -> null);
+        ScopedVirtualThreadExecutor exe = re.newVirtualThreadExecutor();
+        try {
+            Future<String> a;
+            Future<String> b;
+            try ( QuietAutoClosable qac = re.enter("a")) {
+                a = exe.submit(strs::get);
+                try ( QuietAutoClosable qac2 = re.enter("b")) {
+                    b = exe.submit(() -> re.inScope() ? strs.get() : null);
+                }
+            }
+            Future<Boolean> c = exe.submit(re::inScope);
+            assertEquals("a", a.get());
+            assertEquals("b", b.get());
+            assertFalse(c.get());
+        } finally {
+            exe.shutdown();
+        }
+        assertTrue(exe.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(3, exe.completedTasks());
+        assertEquals(0, exe.liveTasks());
+    }
+
+    @Test
+    public void testRecycledFramesDoNotAlterSnapshots() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Provider<String> strs = re.provider(String.class, () -> null);
+        Provider<Integer> ints = re.provider(Integer.class, () -> null);
+        Callable<String> first;
+        Callable<Integer> nested;
+        try ( QuietAutoClosable qac = re.enter("a")) {
+            first = re.wrap(strs::get);
+        }
+        try ( QuietAutoClosable qac = re.enter("x")) {
+            try ( QuietAutoClosable qac2 = re.enter(1)) {
+                nested = re.wrap(ints::get);
+            }
+            for (int i = 2; i < 5; i++) {
+                try ( QuietAutoClosable qac2 = re.enter(i)) {
+                    assertEquals(Integer.valueOf(i), ints.get());
+                    assertEquals("x", strs.get());
+                }
+                try ( QuietAutoClosable qac2 = re.enter("y", i, "z")) {
+                    assertEquals(Integer.valueOf(i), ints.get());
+                    assertEquals("z", strs.get());
+                }
+            }
+        }
+        for (String s : new String[]{"b", "c"}) {
+            try ( QuietAutoClosable qac = re.enter(s)) {
+                assertEquals(s, strs.get());
+                assertNull(ints.get());
+            }
+        }
+        assertEquals("a", first.call());
+        assertEquals(Integer.valueOf(1), nested.call());
+        assertEquals("q", re.run(strs::get, 5, "q"));
+        assertFalse(re.inScope());
+
+        SingleEntryScope single = new SingleEntryScope();
+        Provider<String> singleStrs = single.provider(String.class, () -> null);
+        Callable<String> captured;
+        try ( QuietAutoClosable qac = single.enter("one")) {
+            captured = single.wrap(singleStrs::get);
+        }
+        try ( QuietAutoClosable qac = single.enter("two")) {
+            assertEquals("two", singleStrs.get());
+        }
+        assertEquals("one", captured.call());
+    }
+
+    @Test
+    public void testParkedFramesHoldNoContents() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        assertThreadKeepsNothing(re, () -> re.enter(new Object()));
+        SingleEntryScope single = new SingleEntryScope();
+        assertThreadKeepsNothing(single, () -> single.enter(new Object()));
+    }
+
+    private void assertThreadKeepsNothing(AbstractScope scope,
+            Supplier<QuietAutoClosable> enterSomething) throws Exception {
+        // Park a spare, reuse it uncaptured, then reuse it and capture it
+        enterSomething.get().close();
+        Object captured = new Object();
+        Object uncaptured = new Object();
+        try ( QuietAutoClosable qac = scope.enter(uncaptured)) {
+            assertTrue(scope.inScope());
+        }
+        try ( QuietAutoClosable qac = scope.enter(captured)) {
+            scope.wrap(() -> {
+            });
+        }
+        WeakReference<Object> capturedRef = new WeakReference<>(captured);
+        WeakReference<Object> uncapturedRef = new WeakReference<>(uncaptured);
+        captured = null;
+        uncaptured = null;
+        for (int i = 0; i < 100 && (capturedRef.get() != null || uncapturedRef.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("Captured contents kept by " + scope, capturedRef.get());
+        assertNull("Recycled contents kept by " + scope, uncapturedRef.get());
+    }
+
+    @Test
+    public void testOriginTracing() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Runnable fails = () -> {
+            throw new IllegalArgumentException("fail");
+        };
+        Runnable untraced;
+        Runnable traced;
+        try ( QuietAutoClosable qac = re.enter("a")) {
+            untraced = re.wrap(fails);
+            re.setOriginTracing(1, 4);
+            traced = re.wrap(fails);
+            re.setOriginTracing(0, 1);
+        }
+        try {
+            untraced.run();
+            fail("Exception should have been thrown");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(0, ex.getSuppressed().length);
+        }
+        try {
+            traced.run();
+            fail("Exception should have been thrown");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(1, ex.getSuppressed().length);
+            Throwable origin = ex.getSuppressed()[0];
+            assertTrue(origin instanceof ScopeOrigin);
+            assertTrue(origin.getStackTrace().length <= 4);
+            assertEquals(getClass().getName(), origin.getStackTrace()[0].getClassName());
+            assertEquals("testOriginTracing", origin.getStackTrace()[0].getMethodName());
+        }
+
+        Injector inj = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                re.bind(binder(), StringBuilder.class);
+            }
+        });
+        re.setIncludeStackTraces(true);
+        Callable<StringBuilder> missing;
+        try ( QuietAutoClosable qac = re.enter("a")) {
+            missing = re.wrap(() -> inj.getInstance(StringBuilder.class));
+        }
+        try {
+            missing.call();
+            fail("Exception should have been thrown");
+        } catch (ProvisionException ex) {
+            Throwable ise = ex.getCause();
+            assertTrue(ise instanceof IllegalStateException);
+            assertTrue(ise.getCause() instanceof ScopeOrigin);
+        }
+    }
+
     static class C implements Callable<StringBuilder> {
 
         private final StringBuilder sb;
@@ -0,0 +1,69 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopeMetricsTest {
+
+    @Test
+    public void testMetrics() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ScopeMetrics metrics = new ScopeMetrics();
+        re.addScopeListener(metrics);
+        Provider<String> strs = re.provider(String.class, () -> null);
+        Provider<Integer> ints = re.provider(Integer.class, () -> null);
+        Runnable wrapped;
+        try ( QuietAutoClosable a = re.enter("a", new StringBuilder())) {
+            assertEquals("a", strs.get());
+            assertNull(ints.get());
+            try ( QuietAutoClosable b = re.enter(1)) {
+                assertEquals(Integer.valueOf(1), ints.get());
+                wrapped = re.wrap(() -> assertEquals("a", strs.get()));
+            }
+        }
+        wrapped.run();
+        assertEquals(3, metrics.enterCount());
+        assertEquals(3, metrics.exitCount());
+        assertEquals(2, metrics.maxDepth());
+        assertEquals(1, metrics.wrapCount());
+        assertEquals(1, metrics.snapshotCount());
+        assertEquals(3, metrics.maxSnapshotSize());
+        assertEquals(2, metrics.hits(String.class));
+        assertEquals(0, metrics.misses(String.class));
+        assertEquals(1, metrics.hits(Integer.class));
+        assertEquals(1, metrics.misses(Integer.class));
+
+        re.removeScopeListener(metrics);
+        metrics.reset();
+        try ( QuietAutoClosable a = re.enter("a")) {
+            assertEquals("a", strs.get());
+        }
+        assertEquals(0, metrics.enterCount());
+        assertEquals(0, metrics.hits(String.class));
+    }
+}
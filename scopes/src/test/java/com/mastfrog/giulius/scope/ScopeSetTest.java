@@ -0,0 +1,213 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopeSetTest {
+
+    @Test
+    public void testScopeSet() throws Exception {
+        ReentrantScope request = new ReentrantScope();
+        ReentrantScope session = new ReentrantScope();
+        SingleEntryScope tenant = new SingleEntryScope();
+        ScopeSet scopes = new ScopeSet(request, session, tenant);
+        ExecutorService exe = scopes.wrapThreadPool(Executors.newSingleThreadExecutor());
+        try {
+            assertSame(exe, scopes.wrapThreadPool(exe));
+            Callable<String> check = () -> {
+                assertTrue(tenant.inScope());
+                return request.get(String.class) + ":" + session.get(Integer.class)
+                        + ":" + tenant.get(StringBuilder.class);
+            };
+            Future<String> fut;
+            Runnable wrapped;
+            AtomicInteger runs = new AtomicInteger();
+            try ( QuietAutoClosable a = request.enter("req")) {
+                try ( QuietAutoClosable b = session.enter(5)) {
+                    try ( QuietAutoClosable c = tenant.enter(new StringBuilder("acme"))) {
+                        fut = exe.submit(check);
+                        wrapped = scopes.wrap(() -> {
+                            assertEquals("req", request.get(String.class));
+                            runs.incrementAndGet();
+                        });
+                        assertSame(wrapped, scopes.wrap(wrapped));
+                        // Already current - runs without re-entering
+                        wrapped.run();
+                    }
+                }
+            }
+            assertEquals("req:5:acme", fut.get(10, TimeUnit.SECONDS));
+            wrapped.run();
+            assertEquals(2, runs.get());
+            assertFalse(request.inScope());
+            assertFalse(session.inScope());
+            assertFalse(tenant.inScope());
+            try ( QuietAutoClosable a = session.enter(7)) {
+                // Members not in scope are not entered
+                assertFalse(exe.submit(tenant::inScope).get(10, TimeUnit.SECONDS));
+                assertEquals(Integer.valueOf(7), exe.submit(() -> session.get(Integer.class))
+                        .get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            exe.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreadPoolShedsExpiredTasks() throws Exception {
+        ReentrantScope request = new ReentrantScope();
+        SingleEntryScope tenant = new SingleEntryScope();
+        ScopeSet scopes = new ScopeSet(request, tenant);
+        ExecutorService exe = scopes.wrapThreadPool(Executors.newSingleThreadExecutor());
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            exe.submit(() -> release.await(10, TimeUnit.SECONDS));
+            AtomicInteger ran = new AtomicInteger();
+            Future<String> failed;
+            Future<?> failedRunnable;
+            Future<String> inTime;
+            Deadline deadline;
+            try ( QuietAutoClosable a = tenant.enter(new StringBuilder("acme"))) {
+                try ( QuietAutoClosable b = request.enterWithDeadline(Instant.now().plusMillis(50), "req")) {
+                    deadline = request.deadline();
+                    failed = exe.submit(() -> request.get(String.class));
+                    failedRunnable = exe.submit((Runnable) ran::incrementAndGet);
+                    exe.execute(ran::incrementAndGet);
+                }
+                inTime = exe.submit(() -> tenant.get(StringBuilder.class).toString());
+            }
+            while (!deadline.isExpired()) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<?> f : new Future<?>[]{failed, failedRunnable}) {
+                try {
+                    f.get(10, TimeUnit.SECONDS);
+                    fail("Expired task should not have run");
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof DeadlineExceededException);
+                }
+            }
+            assertEquals("acme", inTime.get(10, TimeUnit.SECONDS));
+            assertEquals(0, ran.get());
+            assertEquals(3, request.shedCount());
+            assertEquals(0, tenant.shedCount());
+        } finally {
+            exe.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancellationReachesWrappedWork() throws Exception {
+        ReentrantScope request = new ReentrantScope();
+        SingleEntryScope tenant = new SingleEntryScope();
+        ScopeSet scopes = new ScopeSet(tenant, request);
+        ExecutorService exe = scopes.wrapThreadPool(Executors.newSingleThreadExecutor());
+        try {
+            CancellationToken token = new CancellationToken();
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicInteger interrupted = new AtomicInteger();
+            AtomicInteger ran = new AtomicInteger();
+            Future<?> running;
+            Future<?> queued;
+            Runnable callback;
+            try ( QuietAutoClosable a = tenant.enter(new StringBuilder("acme"));
+                    QuietAutoClosable b = request.enterCancellable(token, CancelPolicy.INTERRUPT_RUNNING)) {
+                running = exe.submit(() -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException ex) {
+                        interrupted.incrementAndGet();
+                    }
+                });
+                queued = exe.submit((Runnable) ran::incrementAndGet);
+                callback = scopes.wrap((Runnable) ran::incrementAndGet);
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            }
+            running.get(10, TimeUnit.SECONDS);
+            assertEquals(1, interrupted.get());
+            try {
+                queued.get(10, TimeUnit.SECONDS);
+                fail("Queued task should not have run");
+            } catch (CancellationException ex) {
+                // ok
+            }
+            try {
+                callback.run();
+                fail("Wrapped callback should not run");
+            } catch (CancellationException ex) {
+                // ok
+            }
+            assertEquals(0, ran.get());
+        } finally {
+            exe.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownNowReturnsTheTasksExecuted() throws Exception {
+        ReentrantScope request = new ReentrantScope();
+        ScopeSet scopes = new ScopeSet(request);
+        for (boolean set : new boolean[]{true, false}) {
+            ExecutorService delegate = Executors.newSingleThreadExecutor();
+            ExecutorService exe = set ? scopes.wrapThreadPool(delegate)
+                    : request.wrapThreadPool(delegate);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Runnable pending = () -> fail("Should not run");
+            try {
+                exe.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        // shut down
+                    }
+                });
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+                try ( QuietAutoClosable a = request.enter("req")) {
+                    exe.execute(pending);
+                }
+                assertEquals(Arrays.asList(pending), exe.shutdownNow());
+            } finally {
+                release.countDown();
+            }
+        }
+    }
+}
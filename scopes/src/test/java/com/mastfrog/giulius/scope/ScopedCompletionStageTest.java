@@ -0,0 +1,101 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import com.mastfrog.function.state.Bool;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopedCompletionStageTest {
+
+    @Test
+    public void testCompletionStagePropagatesScope() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Provider<String> strs = re.provider(String.class, () -> null);
+        Provider<Integer> ints = re.provider(Integer.class, () -> null);
+        ExecutorService exe = Executors.newFixedThreadPool(3);
+        try {
+            CompletableFuture<Integer> other = new CompletableFuture<>();
+            ScopedCompletionStage<String> stage;
+            try ( QuietAutoClosable qac = re.enter("hello", 5)) {
+                stage = re.supplyAsync(strs::get, exe)
+                        .thenApplyAsync(s -> s + ints.get())
+                        .thenCompose(s -> re.supplyAsync(() -> s + strs.get(), exe))
+                        .thenCombine(other, (s, i) -> s + i + ints.get());
+            }
+            assertFalse(re.inScope());
+            // Completed from a thread with nothing in scope
+            Thread t = new Thread(() -> other.complete(3));
+            t.start();
+            t.join();
+            assertEquals("hello5hello35", stage.toCompletableFuture().get(10, TimeUnit.SECONDS));
+
+            Bool sawScope = Bool.create();
+            try ( QuietAutoClosable qac = re.enter("x")) {
+                re.stage(CompletableFuture.completedFuture(1))
+                        .whenComplete((i, thrown) -> sawScope.set(re.inScope() && "x".equals(strs.get())))
+                        .toCompletableFuture().get(10, TimeUnit.SECONDS);
+            }
+            assertTrue(sawScope.getAsBoolean());
+        } finally {
+            exe.shutdown();
+        }
+    }
+
+    @Test
+    public void testRewrappingAStage() throws Exception {
+        ReentrantScope a = new ReentrantScope();
+        ReentrantScope b = new ReentrantScope();
+        Provider<String> aStrs = a.provider(String.class, () -> null);
+        Provider<String> bStrs = b.provider(String.class, () -> null);
+        ExecutorService exe = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Integer> done = CompletableFuture.completedFuture(1);
+            ScopedCompletionStage<Integer> inA;
+            try ( QuietAutoClosable qac = a.enter("a")) {
+                inA = a.stage(done, exe);
+                assertSame(inA, a.stage(inA, exe));
+                assertNotSame("Different executor", inA, a.stage(inA));
+            }
+            // Another scope's stage propagates this one once wrapped
+            try ( QuietAutoClosable qac = b.enter("b")) {
+                assertEquals("b", b.stage(inA, exe).thenApply(i -> bStrs.get())
+                        .toCompletableFuture().get(10, TimeUnit.SECONDS));
+            }
+            // And the same scope's stage picks up what is in scope now
+            try ( QuietAutoClosable qac = a.enter("later")) {
+                assertEquals("later", a.stage(inA, exe).thenApply(i -> aStrs.get())
+                        .toCompletableFuture().get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            exe.shutdown();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopedForkTest {
+
+    @Test
+    public void testScopedFork() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            try ( QuietAutoClosable qac = re.enter("outer")) {
+                try ( ScopedFork fork = re.fork(pool)) {
+                    try ( QuietAutoClosable inner = re.enter("inner")) {
+                        // Captured when the group was created
+                        for (int i = 0; i < 10; i++) {
+                            results.add(fork.fork(() -> re.get(String.class)));
+                        }
+                    }
+                    fork.join();
+                }
+            }
+            for (Future<String> f : results) {
+                assertEquals("outer", f.get());
+            }
+            // The first failure cancels the rest and is rethrown by join()
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicInteger interrupted = new AtomicInteger();
+            AtomicInteger finished = new AtomicInteger();
+            Future<String> slow;
+            Future<String> late;
+            try ( QuietAutoClosable qac = re.enter("failing");
+                    ScopedFork fork = re.fork(pool)) {
+                slow = fork.fork(() -> {
+                    try {
+                        started.countDown();
+                        Thread.sleep(10000);
+                        return "slow";
+                    } catch (InterruptedException ex) {
+                        interrupted.incrementAndGet();
+                        throw ex;
+                    } finally {
+                        finished.incrementAndGet();
+                    }
+                });
+                started.await(10, TimeUnit.SECONDS);
+                fork.fork(() -> {
+                    throw new IOException("bad");
+                });
+                try {
+                    fork.join(10, TimeUnit.SECONDS);
+                    fail("Exception should have been thrown");
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof IOException);
+                }
+                late = fork.fork(() -> "late");
+                assertTrue(late.isCancelled());
+            }
+            assertTrue(slow.isCancelled());
+            assertEquals(1, interrupted.get());
+            assertEquals(1, finished.get());
+            // Closing without joining waits for subtasks to really finish
+            CountDownLatch running = new CountDownLatch(1);
+            AtomicInteger done = new AtomicInteger();
+            ScopedFork unjoined;
+            try ( QuietAutoClosable qac = re.enter("unjoined")) {
+                unjoined = re.fork(pool);
+                try ( ScopedFork fork = unjoined) {
+                    fork.fork(() -> {
+                        running.countDown();
+                        try {
+                            Thread.sleep(10000);
+                        } catch (InterruptedException ex) {
+                            // Ignore it, and take a while to finish anyway
+                            Thread.sleep(100);
+                        }
+                        return done.incrementAndGet();
+                    });
+                    running.await(10, TimeUnit.SECONDS);
+                }
+                assertEquals(1, done.get());
+            }
+            try {
+                unjoined.fork(() -> "closed");
+                fail("Exception should have been thrown");
+            } catch (IllegalStateException ex) {
+                // ok
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopedProvisionTest {
+
+    @Test
+    public void testProvisionsAreCachedPerEntry() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Injector inj = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(PerEntryService.class).in(re);
+            }
+        });
+        Provider<PerEntryService> services = inj.getProvider(PerEntryService.class);
+        PerEntryService.CREATED.set(0);
+        Callable<PerEntryService> wrapped;
+        PerEntryService first;
+        try ( QuietAutoClosable qac = re.enter("request")) {
+            first = services.get();
+            assertSame(first, services.get());
+            try ( QuietAutoClosable qac2 = re.enter(1)) {
+                // Visible to nested entries
+                assertSame(first, services.get());
+            }
+            wrapped = re.wrap(services::get);
+        }
+        ExecutorService exe = Executors.newSingleThreadExecutor();
+        try {
+            assertSame(first, exe.submit(wrapped).get(10, TimeUnit.SECONDS));
+        } finally {
+            exe.shutdown();
+        }
+        assertEquals(1, PerEntryService.CREATED.get());
+        try ( QuietAutoClosable qac = re.enter("another request")) {
+            PerEntryService second = services.get();
+            assertNotSame(first, second);
+            assertSame(second, services.get());
+            try ( QuietAutoClosable qac2 = re.enter("nested")) {
+                assertSame(second, services.get());
+            }
+        }
+        assertEquals(2, PerEntryService.CREATED.get());
+    }
+
+    static final class PerEntryService {
+
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        PerEntryService() {
+            CREATED.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopedRecursiveTaskTest {
+
+    @Test
+    public void testForkJoinTasksShareSnapshot() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ScopeMetrics metrics = new ScopeMetrics();
+        re.addScopeListener(metrics);
+        Provider<Integer> multiplier = re.provider(Integer.class, () -> null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            class Sum extends ScopedRecursiveTask<Long> {
+
+                private final int from;
+                private final int to;
+
+                Sum(int from, int to) {
+                    super(re);
+                    this.from = from;
+                    this.to = to;
+                }
+
+                @Override
+                protected Long computeInScope() {
+                    if (to - from <= 16) {
+                        long result = 0;
+                        for (int i = from; i < to; i++) {
+                            result += i * multiplier.get();
+                        }
+                        return result;
+                    }
+                    int mid = (from + to) / 2;
+                    Sum left = new Sum(from, mid);
+                    left.fork();
+                    return new Sum(mid, to).invoke() + left.join();
+                }
+            }
+            Sum sum;
+            try ( QuietAutoClosable qac = re.enter(3)) {
+                sum = new Sum(0, 10_000);
+            }
+            assertEquals(3L * (9_999L * 10_000L / 2), (long) pool.invoke(sum));
+            assertEquals(1, metrics.snapshotCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
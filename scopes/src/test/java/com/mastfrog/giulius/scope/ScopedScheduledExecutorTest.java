@@ -0,0 +1,105 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopedScheduledExecutorTest {
+
+    @Test
+    public void testWrappedScheduledThreadPool() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ScheduledExecutorService exe = re.wrapThreadPool(Executors.newScheduledThreadPool(2));
+        try {
+            assertPropagatesScope(re, exe);
+        } finally {
+            exe.shutdown();
+        }
+    }
+
+    @Test
+    public void testWheelTimer() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ScheduledExecutorService wheel = re.newWheelTimer(2, TimeUnit.MILLISECONDS, 8, null);
+        try {
+            assertPropagatesScope(re, wheel);
+        } finally {
+            wheel.shutdown();
+        }
+        assertTrue(wheel.awaitTermination(10, TimeUnit.SECONDS));
+        try {
+            wheel.schedule(() -> {}, 1, TimeUnit.MILLISECONDS);
+            fail("Should have been rejected");
+        } catch (RejectedExecutionException ex) {
+            // ok
+        }
+    }
+
+    private static void assertPropagatesScope(ReentrantScope re, ScheduledExecutorService exe) throws Exception {
+        Provider<String> strs = re.provider(String.class, () -> null);
+        CountDownLatch ticks = new CountDownLatch(3);
+        CountDownLatch last = new CountDownLatch(1);
+        AtomicInteger wrongScope = new AtomicInteger();
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        Future<String> delayed;
+        // Longer than one revolution of the wheel
+        Future<String> longer;
+        ScheduledFuture<?> periodic;
+        boolean cancelled;
+        try ( QuietAutoClosable qac = re.enter("foo")) {
+            delayed = exe.schedule(strs::get, 5, TimeUnit.MILLISECONDS);
+            longer = exe.schedule(strs::get, 40, TimeUnit.MILLISECONDS);
+            periodic = exe.scheduleAtFixedRate(() -> {
+                if (!"foo".equals(strs.get())) {
+                    wrongScope.incrementAndGet();
+                }
+                ticks.countDown();
+            }, 1, 3, TimeUnit.MILLISECONDS);
+            cancelled = exe.schedule(cancelledRuns::incrementAndGet, 20, TimeUnit.MILLISECONDS).cancel(false);
+            // Due after the cancelled one, so it would have run by the time
+            // this has
+            exe.schedule(last::countDown, 60, TimeUnit.MILLISECONDS);
+        }
+        assertEquals("foo", delayed.get(10, TimeUnit.SECONDS));
+        assertEquals("foo", longer.get(10, TimeUnit.SECONDS));
+        assertTrue(ticks.await(10, TimeUnit.SECONDS));
+        periodic.cancel(false);
+        assertTrue(last.await(10, TimeUnit.SECONDS));
+        assertEquals(0, wrongScope.get());
+        // On a loaded machine the cancel can lose the race, in which case it
+        // legitimately ran
+        assertEquals(cancelled ? 0 : 1, cancelledRuns.get());
+    }
+}
@@ -0,0 +1,88 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopedSpliteratorTest {
+
+    @Test
+    public void testScopedStreams() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ScopeMetrics metrics = new ScopeMetrics();
+        re.addScopeListener(metrics);
+        Provider<Integer> multiplier = re.provider(Integer.class, () -> null);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            items.add(i);
+        }
+        long sum;
+        Stream<Integer> later;
+        try ( QuietAutoClosable qac = re.enter(2)) {
+            sum = re.parallel(items).mapToLong(i -> i * multiplier.get()).sum();
+            later = re.stream(items.spliterator(), false).map(i -> i * multiplier.get());
+        }
+        assertEquals(2L * (9_999L * 10_000L / 2), sum);
+        assertTrue("Should enter per split, not per element: " + metrics.enterCount(),
+                metrics.enterCount() < 1_000);
+        assertEquals(Integer.valueOf(20), later.skip(10).findFirst().get());
+    }
+
+    @Test
+    public void testStagesAfterStatefulOperations() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Provider<Integer> multiplier = re.provider(Integer.class, () -> null);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 9_999; i >= 0; i--) {
+            items.add(i);
+        }
+        Stream<Integer> parallelSorted;
+        Stream<Integer> sequentialSorted;
+        Stream<Integer> limited;
+        try ( QuietAutoClosable qac = re.enter(3)) {
+            parallelSorted = re.parallel(items).sorted().map(i -> i * multiplier.get());
+            sequentialSorted = re.stream(items.spliterator(), false).sorted().map(i -> i * multiplier.get());
+            limited = re.parallel(items).map(i -> i % 500).distinct().limit(100)
+                    .filter(i -> multiplier.get() != null);
+        }
+        // Consumed with nothing in scope on the calling thread, so the stages
+        // after the barrier fail unless they enter the scope themselves
+        for (Stream<Integer> stream : Arrays.asList(parallelSorted, sequentialSorted)) {
+            List<Integer> result = stream.collect(Collectors.toList());
+            assertEquals(items.size(), result.size());
+            for (int i = 0; i < result.size(); i++) {
+                assertEquals(Integer.valueOf(i * 3), result.get(i));
+            }
+        }
+        assertEquals(100, limited.count());
+    }
+}
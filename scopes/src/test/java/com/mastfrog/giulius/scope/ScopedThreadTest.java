@@ -0,0 +1,102 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopedThreadTest {
+
+    @Test
+    public void testScopedThreads() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        SingleEntryScope single = new SingleEntryScope();
+        Provider<String> strs = re.provider(String.class, () -> null);
+        Provider<Integer> ints = single.provider(Integer.class, () -> null);
+        ExecutorService exe = re.wrapThreadPool(Executors.newFixedThreadPool(2,
+                new ScopedThreadFactory("test-scoped", true)));
+        try {
+            Future<String> fut;
+            try ( QuietAutoClosable qac = re.enter("outer")) {
+                fut = exe.submit(() -> {
+                    assertTrue(Thread.currentThread() instanceof ScopedThread);
+                    StringBuilder sb = new StringBuilder(strs.get());
+                    try ( QuietAutoClosable qac2 = re.enter("inner")) {
+                        try ( QuietAutoClosable qac3 = single.enter(3)) {
+                            sb.append(strs.get()).append(ints.get());
+                        }
+                        assertFalse(single.inScope());
+                    }
+                    return sb.append(strs.get()).toString();
+                });
+            }
+            assertEquals("outerinner3outer", fut.get(10, TimeUnit.SECONDS));
+        } finally {
+            exe.shutdown();
+        }
+    }
+
+    @Test
+    public void testFrameLocalIndicesAreReused() throws Exception {
+        int first = new FrameLocal().index();
+        for (int i = 0; i < 1_000; i++) {
+            new ReentrantScope();
+        }
+        int next = Integer.MAX_VALUE;
+        for (int i = 0; i < 100 && next > first + 1_000; i++) {
+            System.gc();
+            Thread.sleep(10);
+            next = new FrameLocal().index();
+        }
+        assertTrue("Indices of collected scopes were not reused: " + next,
+                next <= first + 1_000);
+        // A frame set through a collected FrameLocal is not visible to a
+        // later one given the same index
+        ScopedThread thread = new ScopedThread(() -> {}, "unstarted");
+        Frame frame = Frame.recycled(null, 0, null, 0);
+        thread.setFrame(3, 1, frame);
+        assertSame(frame, thread.frame(3, 1));
+        assertNull(thread.frame(3, 2));
+        // and the thread does not keep it once a later one has looked
+        assertNull(thread.frame(3, 1));
+    }
+
+    @Test
+    public void testFramesOfFreedIndicesAreDropped() throws Exception {
+        ScopedThread thread = new ScopedThread(() -> {}, "unstarted");
+        // No FrameLocal has a generation below 1
+        Frame frame = Frame.recycled(null, 0, null, 0);
+        thread.setFrame(500, -1, frame);
+        assertSame(frame, thread.frame(500, -1));
+        FrameLocal other = new FrameLocal();
+        thread.setFrame(other.index(), 0, null);
+        assertNull("Frame of a free index kept", thread.frame(500, -1));
+    }
+}
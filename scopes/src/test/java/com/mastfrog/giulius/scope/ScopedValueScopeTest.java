@@ -0,0 +1,120 @@
+/*
+ *               BSD LICENSE NOTICE
+ * Copyright (c) 2010-2012, Tim Boudreau
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met: 
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer. 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScopedValueScopeTest {
+
+    private ScopedValueScope scope;
+    private Injector deps;
+    private ExecutorService svc;
+
+    @Before
+    public void setUp() {
+        scope = new ScopedValueScope();
+        deps = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                scope.bind(binder(), String.class, Integer.class);
+                scope.bindAllowingNulls(binder(), StringBuilder.class);
+            }
+        });
+        svc = scope.wrapThreadPool(Executors.newFixedThreadPool(2));
+    }
+
+    @After
+    public void tearDown() {
+        svc.shutdownNow();
+    }
+
+    @Test
+    public void testRunIsReentrant() throws Exception {
+        assertFalse(scope.inScope());
+        scope.run(() -> {
+            assertTrue(scope.inScope());
+            assertEquals("a", deps.getInstance(String.class));
+            assertEquals(Integer.valueOf(1), deps.getInstance(Integer.class));
+            assertNull(deps.getInstance(StringBuilder.class));
+            String result;
+            try {
+                result = scope.run(() -> {
+                    assertEquals(Integer.valueOf(1), deps.getInstance(Integer.class));
+                    return deps.getInstance(String.class);
+                }, "b");
+            } catch (Exception ex) {
+                throw new AssertionError(ex);
+            }
+            assertEquals("b", result);
+            assertEquals("a", deps.getInstance(String.class));
+        }, "a", 1);
+        assertFalse(scope.inScope());
+    }
+
+    @Test
+    public void testEnterAndRunInterleave() throws Exception {
+        try ( QuietAutoClosable qac = scope.enter("a", 1)) {
+            assertEquals("a", deps.getInstance(String.class));
+            scope.run(() -> {
+                assertEquals("b", deps.getInstance(String.class));
+                try ( QuietAutoClosable inner = scope.enter(2)) {
+                    assertEquals(Integer.valueOf(2), deps.getInstance(Integer.class));
+                    assertEquals("b", deps.getInstance(String.class));
+                }
+                assertEquals(Integer.valueOf(1), deps.getInstance(Integer.class));
+                assertEquals("b", deps.getInstance(String.class));
+            }, "b");
+            assertEquals("a", deps.getInstance(String.class));
+        }
+        assertFalse(scope.inScope());
+    }
+
+    @Test
+    public void testWrappedThreadPool() throws Exception {
+        String result = scope.run(() -> {
+            return svc.submit(() -> {
+                assertTrue(scope.inScope());
+                return deps.getInstance(String.class) + deps.getInstance(Integer.class);
+            }).get();
+        }, "x", 5);
+        assertEquals("x5", result);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExitWithoutEnter() {
+        scope.exit();
+    }
+}
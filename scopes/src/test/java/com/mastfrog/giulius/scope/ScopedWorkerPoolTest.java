@@ -0,0 +1,110 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScopedWorkerPoolTest {
+
+    @Test
+    public void testSnapshotIdentityFastPath() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        ScopeMetrics metrics = new ScopeMetrics();
+        re.addScopeListener(metrics);
+        Provider<String> strs = re.provider(String.class, () -> null);
+        ExecutorService wrapped = re.wrapThreadPool(Executors.newSingleThreadExecutor());
+        ScopedWorkerPool pool = (ScopedWorkerPool) re.newThreadPool(1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(101);
+            AtomicInteger wrongScope = new AtomicInteger();
+            Runnable check = () -> {
+                if (!"req".equals(strs.get())) {
+                    wrongScope.incrementAndGet();
+                }
+                done.countDown();
+            };
+            try ( QuietAutoClosable qac = re.enter("req")) {
+                long enters = metrics.enterCount();
+                // Running a wrapper on the thread that created it should not
+                // enter anything
+                re.wrap(check).run();
+                assertEquals(enters, metrics.enterCount());
+                // execute() used to drop the scope
+                wrapped.execute(check);
+                pool.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        throw new AssertionError(ex);
+                    }
+                });
+                for (int i = 0; i < 99; i++) {
+                    pool.execute(check);
+                }
+            }
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, wrongScope.get());
+            assertEquals(1, pool.reentries());
+            assertEquals(99, pool.reuses());
+        } finally {
+            wrapped.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTasksSubmittedOutOfScopeRunOutOfScope() throws Exception {
+        SingleEntryScope single = new SingleEntryScope();
+        Provider<String> strs = single.provider(String.class, () -> null);
+        ExecutorService exe = single.newThreadPool(1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Boolean> first;
+            try ( QuietAutoClosable qac = single.enter("a")) {
+                first = exe.submit(() -> release.await(10, TimeUnit.SECONDS));
+            }
+            // Runs on the same worker, straight after a task which was in scope
+            Future<String> second = exe.submit(() -> {
+                assertFalse(single.inScope());
+                return single.run(strs::get, "b");
+            });
+            release.countDown();
+            assertTrue(first.get(10, TimeUnit.SECONDS));
+            assertEquals("b", second.get(10, TimeUnit.SECONDS));
+        } finally {
+            exe.shutdown();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2026 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.giulius.scope;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SnapshotRetentionTest {
+
+    @Test
+    public void testProjectedSnapshots() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        Runnable run;
+        Supplier<String> supp;
+        Callable<String> call;
+        StringBuilder sb = new StringBuilder("hello");
+        try ( QuietAutoClosable qac = re.enter("request", 23, sb)) {
+            try ( QuietAutoClosable qac2 = re.enter("nested")) {
+                run = re.wrapProjected(() -> {
+                    assertEquals("nested", re.get(String.class));
+                    assertSame(sb, re.get(StringBuilder.class));
+                    assertNull(re.get(Integer.class));
+                }, String.class, StringBuilder.class, CharSequence.class);
+                Supplier<String> unwrapped = () -> re.get(Integer.class) + ":" + re.get(String.class);
+                supp = re.wrapProjected(unwrapped, Integer.class);
+                Callable<String> unwrappedCall = () -> re.get(String.class) + ":" + re.get(Integer.class);
+                // Projects, rather than putting String.class itself in scope
+                call = re.wrapProjected(unwrappedCall, String.class);
+            }
+        }
+        run.run();
+        assertEquals("23:null", supp.get());
+        assertEquals("nested:null", call.call());
+    }
+
+    @Test
+    public void testWeakSnapshots() throws Exception {
+        ReentrantScope re = new ReentrantScope();
+        re.setSnapshotTracking(true);
+        Runnable weak;
+        Callable<String> soft;
+        Runnable strong;
+        java.lang.ref.WeakReference<Object> probe;
+        try ( QuietAutoClosable qac = re.enter("request", new StringBuilder("transient"))) {
+            probe = new java.lang.ref.WeakReference<>(re.get(StringBuilder.class));
+            weak = re.wrapProjected(() -> fail("Should not run"), SnapshotRetention.WEAK);
+            Callable<String> unwrapped = () -> re.get(String.class);
+            soft = re.wrapProjected(unwrapped, SnapshotRetention.SOFT, String.class);
+            strong = re.wrap(() -> {
+            });
+            assertEquals(3, re.liveSnapshots());
+            assertEquals(3, re.retainedSnapshotEntries());
+        }
+        for (int i = 0; i < 100 && probe.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assume.assumeTrue("Could not force garbage collection", probe.get() == null);
+        try {
+            weak.run();
+            fail("Exception should have been thrown");
+        } catch (SnapshotCollectedException ex) {
+            assertEquals(StringBuilder.class, ex.collectedType());
+        }
+        // Interned, so never collected
+        assertEquals("request", soft.call());
+        strong = null;
+        for (int i = 0; i < 100 && re.liveSnapshots() > 2; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(2, re.liveSnapshots());
+        assertEquals(1, re.retainedSnapshotEntries());
+    }
+
+    @Test
+    public void testCallablesWrappedOutOfScopeAreNotWrapped() throws Exception {
+        SingleEntryScope single = new SingleEntryScope();
+        // Would throw if the wrapper had entered the scope with nothing in it
+        Callable<String> unwrapped = () -> single.run(() -> single.get(String.class), "x");
+        for (SnapshotRetention retention : SnapshotRetention.values()) {
+            Callable<String> call = single.wrapProjected(unwrapped, retention, String.class);
+            assertSame(retention.name(), unwrapped, call);
+            assertEquals("x", call.call());
+        }
+    }
+}